@@ -6,6 +6,8 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -19,14 +21,57 @@ public record AppConfig(
         Web web,
         DbCfg db,
         ServerAuthCfg serverAuth,
-        AdminCfg admin
+        AdminCfg admin,
+        CompressionCfg compression,
+        LimitsCfg limits,
+        StatsCfg stats,
+        JournalCfg journal,
+        BansCfg bans
 ) {
 
-    public record Web(String bind, int port) {}
-    public record DbCfg(String jdbcUrl, String username, String password) {}
+    /**
+     * @param executor      "virtual" (one virtual thread per request, JDK 21+) or "fixed" (bounded platform pool)
+     * @param workerThreads pool size for "fixed" mode and for the fallback when virtual threads are unavailable
+     * @param sseLoops      fan-out threads shared by all open SSE streams (writes run per connection)
+     */
+    public record Web(String bind, int port, String executor, int workerThreads, int sseLoops) {}
+    public record DbCfg(String jdbcUrl, String username, String password, int maxPoolSize) {}
     public record ServerAuthCfg(boolean enabled, String token) {}
     public record AdminCfg(String serverName, String rootPasswordHash) {}
 
+    /**
+     * @param minBytes       bodies smaller than this are sent uncompressed
+     * @param disabledRoutes path prefixes that are never compressed
+     */
+    public record CompressionCfg(boolean enabled, int minBytes, List<String> disabledRoutes) {}
+
+    /**
+     * @param maxRequestBodyBytes cap on the decoded (decompressed) size of a request body
+     */
+    public record LimitsCfg(long maxRequestBodyBytes) {}
+
+    /**
+     * @param batchChunkSize    players per JDBC batch flush (one multi-row upsert per table)
+     * @param writeBehind       aggregate deltas in memory and flush them periodically
+     * @param flushIntervalMs   write-behind flush interval
+     * @param maxPendingPlayers flush early once this many xuids are pending
+     */
+    public record StatsCfg(int batchChunkSize, boolean writeBehind, long flushIntervalMs, int maxPendingPlayers) {}
+
+    /**
+     * @param enabled       accept ingest with 202 after appending to the local journal
+     * @param dir           directory holding journal segments and the checkpoint
+     * @param segmentBytes  size of one memory-mapped segment file (at least one max request body)
+     * @param forceOnAppend msync every record (survives power loss, not only process crashes)
+     */
+    public record JournalCfg(boolean enabled, String dir, int segmentBytes, boolean forceOnAppend) {}
+
+    /**
+     * @param bloomFalsePositiveRate target false-positive rate of the exported ban Bloom filter
+     * @param bloomRebuildDelayMs    ban changes within this window share one filter rebuild
+     */
+    public record BansCfg(double bloomFalsePositiveRate, long bloomRebuildDelayMs) {}
+
     @SuppressWarnings("unchecked")
     public static AppConfig loadFromResource(String resourceName) {
         Yaml y = new Yaml();
@@ -82,6 +127,12 @@ public record AppConfig(
             web:
               bind: "0.0.0.0"
               port: 8080
+              # "virtual": one virtual thread per request (JDK 21+, falls back to "fixed" on older runtimes)
+              # "fixed":   bounded platform thread pool of workerThreads
+              executor: "virtual"
+              workerThreads: 12
+              # Threads writing Admin UI live updates; open dashboards do not use request threads.
+              sseLoops: 1
 
             db:
               # If you see: "Public Key Retrieval is not allowed"
@@ -89,6 +140,8 @@ public record AppConfig(
               jdbcUrl: "jdbc:mysql://localhost:3306/banbridge?useUnicode=true&characterEncoding=utf8&serverTimezone=UTC&useSSL=false&allowPublicKeyRetrieval=true"
               username: "<DB_USER>"
               password: "<DB_PASSWORD>"
+              # With virtual threads the pool is the real concurrency limit for DB work.
+              maxPoolSize: 10
 
             serverAuth:
               enabled: true
@@ -98,6 +151,40 @@ public record AppConfig(
               serverName: "MyServer"
               # Leave empty to auto-generate a root password on first start (printed to console once)
               rootPasswordHash: ""
+
+            compression:
+              # gzip/deflate for JSON and HTML responses when the client sends Accept-Encoding
+              enabled: true
+              minBytes: 1024
+              # Path prefixes that are always sent uncompressed
+              disabledRoutes: []
+
+            limits:
+              # Max decoded request body size (after gzip/deflate), guards against decompression bombs
+              maxRequestBodyBytes: 16777216
+
+            stats:
+              # Players per JDBC batch flush; each flush is one multi-row upsert per table
+              batchChunkSize: 500
+              # Merge deltas per player in memory and write them once per flush window
+              writeBehind: true
+              flushIntervalMs: 5000
+              # Flush early once this many players have pending deltas
+              maxPendingPlayers: 10000
+
+            journal:
+              # Append stats/presence/metrics/ban reports to a local memory-mapped journal,
+              # answer 202 Accepted and apply them to MySQL in the background.
+              enabled: false
+              dir: "journal"
+              segmentBytes: 67108864
+              # true: msync every record (power-loss safe, slower)
+              forceOnAppend: false
+
+            bans:
+              # Bloom filter served at /api/server/bans/bloom for client-side prefiltering
+              bloomFalsePositiveRate: 0.001
+              bloomRebuildDelayMs: 1000
             """;
     }
 
@@ -109,16 +196,25 @@ public record AppConfig(
         Map<String, Object> db = (Map<String, Object>) root.getOrDefault("db", Map.of());
         Map<String, Object> serverAuth = (Map<String, Object>) root.getOrDefault("serverAuth", Map.of());
         Map<String, Object> admin = (Map<String, Object>) root.getOrDefault("admin", Map.of());
+        Map<String, Object> compression = (Map<String, Object>) root.getOrDefault("compression", Map.of());
+        Map<String, Object> limits = (Map<String, Object>) root.getOrDefault("limits", Map.of());
+        Map<String, Object> stats = (Map<String, Object>) root.getOrDefault("stats", Map.of());
+        Map<String, Object> journal = (Map<String, Object>) root.getOrDefault("journal", Map.of());
+        Map<String, Object> bans = (Map<String, Object>) root.getOrDefault("bans", Map.of());
 
         Web w = new Web(
                 String.valueOf(web.getOrDefault("bind", "0.0.0.0")),
-                Integer.parseInt(String.valueOf(web.getOrDefault("port", "8080")))
+                Integer.parseInt(String.valueOf(web.getOrDefault("port", "8080"))),
+                String.valueOf(web.getOrDefault("executor", "virtual")).trim().toLowerCase(),
+                Math.max(1, Integer.parseInt(String.valueOf(web.getOrDefault("workerThreads", "12")))),
+                Math.max(1, Integer.parseInt(String.valueOf(web.getOrDefault("sseLoops", "1"))))
         );
 
         DbCfg d = new DbCfg(
                 String.valueOf(db.getOrDefault("jdbcUrl", "")),
                 String.valueOf(db.getOrDefault("username", "")),
-                String.valueOf(db.getOrDefault("password", ""))
+                String.valueOf(db.getOrDefault("password", "")),
+                Math.max(1, Integer.parseInt(String.valueOf(db.getOrDefault("maxPoolSize", "10"))))
         );
 
         ServerAuthCfg sa = new ServerAuthCfg(
@@ -131,11 +227,56 @@ public record AppConfig(
                 String.valueOf(admin.getOrDefault("rootPasswordHash", ""))
         );
 
-        AppConfig cfg = new AppConfig(w, d, sa, ac);
+        CompressionCfg cc = new CompressionCfg(
+                Boolean.parseBoolean(String.valueOf(compression.getOrDefault("enabled", "true"))),
+                Integer.parseInt(String.valueOf(compression.getOrDefault("minBytes", "1024"))),
+                stringList(compression.get("disabledRoutes"))
+        );
+
+        LimitsCfg lc = new LimitsCfg(
+                Math.max(1024L, Long.parseLong(String.valueOf(limits.getOrDefault("maxRequestBodyBytes", "16777216"))))
+        );
+
+        StatsCfg st = new StatsCfg(
+                Math.max(1, Integer.parseInt(String.valueOf(stats.getOrDefault("batchChunkSize", "500")))),
+                Boolean.parseBoolean(String.valueOf(stats.getOrDefault("writeBehind", "true"))),
+                Math.max(100L, Long.parseLong(String.valueOf(stats.getOrDefault("flushIntervalMs", "5000")))),
+                Math.max(1, Integer.parseInt(String.valueOf(stats.getOrDefault("maxPendingPlayers", "10000"))))
+        );
+
+        // A segment must hold at least one full request body plus record framing.
+        long minSegment = lc.maxRequestBodyBytes() + 64;
+        long segment = Math.max(minSegment, Long.parseLong(String.valueOf(journal.getOrDefault("segmentBytes", "67108864"))));
+        JournalCfg jc = new JournalCfg(
+                Boolean.parseBoolean(String.valueOf(journal.getOrDefault("enabled", "false"))),
+                String.valueOf(journal.getOrDefault("dir", "journal")),
+                (int) Math.min(Integer.MAX_VALUE - 8L, segment),
+                Boolean.parseBoolean(String.valueOf(journal.getOrDefault("forceOnAppend", "false")))
+        );
+
+        double fpp = Double.parseDouble(String.valueOf(bans.getOrDefault("bloomFalsePositiveRate", "0.001")));
+        BansCfg bc = new BansCfg(
+                Math.min(0.5, Math.max(1e-9, fpp)),
+                Math.max(0L, Long.parseLong(String.valueOf(bans.getOrDefault("bloomRebuildDelayMs", "1000"))))
+        );
+
+        AppConfig cfg = new AppConfig(w, d, sa, ac, cc, lc, st, jc, bc);
         validate(cfg, sourceLabel);
         return cfg;
     }
 
+    private static List<String> stringList(Object raw) {
+        List<String> out = new ArrayList<>();
+        if (raw instanceof List<?> list) {
+            for (Object o : list) {
+                if (o == null) continue;
+                String v = String.valueOf(o).trim();
+                if (!v.isBlank()) out.add(v);
+            }
+        }
+        return out;
+    }
+
     private static void validate(AppConfig cfg, String sourceLabel) {
         if (cfg == null) throw new IllegalStateException("Config is null (" + sourceLabel + ")");
         if (cfg.db == null) throw new IllegalStateException("Missing 'db' section (" + sourceLabel + ")");
@@ -33,7 +33,8 @@ public final class BackendMain {
         AppConfig cfg = AppConfig.load(cfgPath);
 
         Db db = new Db(cfg.db());
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(null, db), "bb-shutdown"));
+        Thread earlyHook = new Thread(() -> shutdown(null, null, null, null, db), "bb-shutdown");
+        Runtime.getRuntime().addShutdownHook(earlyHook);
 
         AuthService serverAuth = new AuthService(cfg.serverAuth());
 
@@ -41,14 +42,31 @@ public final class BackendMain {
         usersRepo.ensureRootExists(cfg.admin().rootPasswordHash());
 
         MetricsRepository metricsRepo = new MetricsRepository(db);
-        StatsRepository statsRepo = new StatsRepository(db);
-        PresenceRepository presenceRepo = new PresenceRepository(db);
+        StatsRepository statsRepo = new StatsRepository(db, cfg.stats().batchChunkSize());
+        StatsAggregator statsAggregator = cfg.stats().writeBehind()
+                ? new StatsAggregator(statsRepo, cfg.stats().flushIntervalMs(), cfg.stats().maxPendingPlayers())
+                : null;
+        LinkedAccountIndex links = new LinkedAccountIndex();
+        System.out.println("[BackendBridgeService] Linked account index loaded: " + links.load(db) + " identifiers");
+        PresenceRepository presenceRepo = new PresenceRepository(db, links);
 
         BansRepository bansRepo = new BansRepository(db, 500);
+        System.out.println("[BackendBridgeService] Ban index loaded: " + bansRepo.loadBanIndex() + " active bans");
+        System.out.println("[BackendBridgeService] Ban change buffer loaded: " + bansRepo.loadRecentChanges() + " recent changes");
+        System.out.println("[BackendBridgeService] Ban expiry wheel started: " + bansRepo.startExpiry() + " pending expiries");
+        BanBloomFilter banBloom = new BanBloomFilter(bansRepo.banIndex(),
+                cfg.bans().bloomFalsePositiveRate(), cfg.bans().bloomRebuildDelayMs());
+        bansRepo.addChangeListener(banBloom::markDirty);
         CommandsRepository commandsRepo = new CommandsRepository(db);
 
         AdminAuth adminAuth = new AdminAuth(db);
-        AdminRepository adminRepo = new AdminRepository(db, cfg.admin().serverName(), usersRepo, metricsRepo);
+        AdminRepository adminRepo = new AdminRepository(db, cfg.admin().serverName(), usersRepo, metricsRepo, bansRepo, links);
+
+        IngestJournal journal = null;
+        if (cfg.journal().enabled()) {
+            journal = IngestJournal.open(cfg.journal());
+            journal.start(new JournalApplier(statsRepo, presenceRepo, metricsRepo, bansRepo));
+        }
 
         HttpApiServer http = new HttpApiServer(
                 cfg,
@@ -56,27 +74,38 @@ public final class BackendMain {
                 serverAuth,
                 adminAuth,
                 statsRepo,
+                statsAggregator,
                 bansRepo,
+                banBloom,
                 metricsRepo,
                 presenceRepo,
                 commandsRepo,
-                adminRepo
+                adminRepo,
+                journal
         );
 
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(http, db), "bb-shutdown-2"));
+        // Hooks run concurrently: a single hook keeps the order http -> journal -> stats flush -> ban expiry -> db.
+        IngestJournal journalRef = journal;
+        Runtime.getRuntime().removeShutdownHook(earlyHook);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(http, journalRef, statsAggregator, bansRepo, db), "bb-shutdown-2"));
 
         http.start();
-        startConsoleThread(http, db, usersRepo);
+        startConsoleThread(http, journalRef, statsAggregator, bansRepo, db, usersRepo);
 
         Thread.currentThread().join();
     }
 
-    private static void shutdown(HttpApiServer http, Db db) {
+    private static void shutdown(HttpApiServer http, IngestJournal journal, StatsAggregator statsAggregator,
+                                 BansRepository bansRepo, Db db) {
         try { if (http != null) http.stop(); } catch (Exception ignored) {}
+        try { if (journal != null) journal.close(); } catch (Exception ignored) {}
+        try { if (statsAggregator != null) statsAggregator.close(); } catch (Exception ignored) {}
+        try { if (bansRepo != null) bansRepo.close(); } catch (Exception ignored) {}
         try { if (db != null) db.close(); } catch (Exception ignored) {}
     }
 
-    private static void startConsoleThread(HttpApiServer http, Db db, UsersRepository usersRepo) {
+    private static void startConsoleThread(HttpApiServer http, IngestJournal journal, StatsAggregator statsAggregator,
+                                           BansRepository bansRepo, Db db, UsersRepository usersRepo) {
         Thread t = new Thread(() -> {
             try (BufferedReader br = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
                 System.out.println("[BackendBridgeService] Commands: /stop | stop | exit | quit | resetroot <newPassword>");
@@ -88,7 +117,7 @@ public final class BackendMain {
 
                     if (equalsAnyIgnoreCase(cmdLine, "/stop", "stop", "exit", "quit")) {
                         System.out.println("[BackendBridgeService] Stopping...");
-                        shutdown(http, db);
+                        shutdown(http, journal, statsAggregator, bansRepo, db);
                         System.out.println("[BackendBridgeService] Bye.");
                         System.exit(0);
                         return;
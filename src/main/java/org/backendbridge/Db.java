@@ -6,6 +6,10 @@ import com.zaxxer.hikari.HikariDataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
 
 /**
  * Database wrapper backed by HikariCP.
@@ -20,8 +24,8 @@ public final class Db implements AutoCloseable {
         hc.setUsername(cfg.username());
         hc.setPassword(cfg.password());
 
-        hc.setMaximumPoolSize(10);
-        hc.setMinimumIdle(2);
+        hc.setMaximumPoolSize(cfg.maxPoolSize());
+        hc.setMinimumIdle(Math.min(2, cfg.maxPoolSize()));
         hc.setConnectionTimeout(10_000);
         hc.setIdleTimeout(60_000);
         hc.setMaxLifetime(10 * 60_000);
@@ -30,6 +34,8 @@ public final class Db implements AutoCloseable {
         hc.addDataSourceProperty("cachePrepStmts", "true");
         hc.addDataSourceProperty("prepStmtCacheSize", "250");
         hc.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        // executeBatch() on INSERTs becomes one multi-row statement per batch (one round-trip)
+        hc.addDataSourceProperty("rewriteBatchedStatements", "true");
 
         this.ds = new HikariDataSource(hc);
     }
@@ -48,6 +54,24 @@ public final class Db implements AutoCloseable {
         }
     }
 
+    /**
+     * True if retrying can succeed: transient or recoverable SQL errors and lost connections
+     * (SQLState class 08). Data, constraint and syntax errors, and non-SQL failures, fail the
+     * same way on every retry.
+     */
+    public static boolean isRetryable(Throwable t) {
+        for (Throwable c = t; c != null; c = c.getCause()) {
+            if (c instanceof SQLTransientException
+                    || c instanceof SQLRecoverableException
+                    || c instanceof SQLNonTransientConnectionException) return true;
+            if (c instanceof SQLException se) {
+                String state = se.getSQLState();
+                return state != null && (state.startsWith("08") || state.startsWith("40"));
+            }
+        }
+        return false;
+    }
+
     @Override
     public void close() {
         ds.close();
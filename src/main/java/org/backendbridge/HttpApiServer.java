@@ -4,21 +4,35 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
+import org.backendbridge.adminui.AdminStaticAssets;
 import org.backendbridge.adminui.Lang;
 import org.backendbridge.repo.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public final class HttpApiServer {
 
     private static final String LANG_COOKIE = "bb_lang";
+    private static final int BAN_REPORT_BATCH_MAX = 1000;
+    private static final long COMMAND_WAIT_MAX_MS = 30_000L;
+    /** Watermark re-check of parked command polls (commands inserted outside this process). */
+    private static final long COMMAND_RECHECK_MS = 1_000L;
 
     private final AppConfig cfg;
     private final Db db;
@@ -27,14 +41,23 @@ public final class HttpApiServer {
     private final AdminAuth adminAuth;
 
     private final StatsRepository statsRepo;
+    private final StatsAggregator statsAggregator;
     private final BansRepository bansRepo;
+    private final BanBloomFilter banBloom;
     private final MetricsRepository metricsRepo;
     private final PresenceRepository presenceRepo;
     private final CommandsRepository commandsRepo;
 
     private final AdminRepository adminRepo;
 
+    private final IngestJournal journal;
+    private final HttpCompression compression;
+
     private HttpServer server;
+    private ExecutorService executor;
+    private ScheduledExecutorService commandWaitTimer;
+    private SseHub sseHub;
+    private SseHub.CursorFeed banFeed;
 
     public HttpApiServer(
             AppConfig cfg,
@@ -42,34 +65,66 @@ public final class HttpApiServer {
             AuthService serverAuth,
             AdminAuth adminAuth,
             StatsRepository statsRepo,
+            StatsAggregator statsAggregator,
             BansRepository bansRepo,
+            BanBloomFilter banBloom,
             MetricsRepository metricsRepo,
             PresenceRepository presenceRepo,
             CommandsRepository commandsRepo,
-            AdminRepository adminRepo
+            AdminRepository adminRepo,
+            IngestJournal journal
     ) {
         this.cfg = cfg;
         this.db = db;
         this.serverAuth = serverAuth;
         this.adminAuth = adminAuth;
         this.statsRepo = statsRepo;
+        this.statsAggregator = statsAggregator;
         this.bansRepo = bansRepo;
+        this.banBloom = banBloom;
         this.metricsRepo = metricsRepo;
         this.presenceRepo = presenceRepo;
         this.commandsRepo = commandsRepo;
         this.adminRepo = adminRepo;
+        this.journal = journal;
+        this.compression = new HttpCompression(cfg.compression(), cfg.limits().maxRequestBodyBytes());
     }
 
     public void start() throws IOException {
         server = HttpServer.create(new InetSocketAddress(cfg.web().bind(), cfg.web().port()), 0);
-        server.setExecutor(Executors.newFixedThreadPool(12));
+        executor = newRequestExecutor(cfg.web());
+        server.setExecutor(executor);
+        commandWaitTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bb-command-wait");
+            t.setDaemon(true);
+            return t;
+        });
+
+        sseHub = new SseHub(cfg.web().sseLoops());
+        sseHub.start();
+
+        // Ban push stream: served from the repository's change buffer, woken after each ban commit.
+        SseHub hub = sseHub;
+        banFeed = (cursor, max) -> {
+            BanChangeRing.Page p = bansRepo.bufferedChanges(cursor, max);
+            if (p == null) return null;
+            List<SseHub.Event> events = new ArrayList<>(p.changes().size());
+            for (BanChangeRing.Change c : p.changes()) events.add(new SseHub.Event(c.seq(), c.type(), c.json()));
+            return new SseHub.Page(events, p.hasMore());
+        };
+        SseHub.CursorFeed feed = banFeed;
+        bansRepo.addChangeListener(() -> hub.notifyFeed(feed));
 
         // ---------------- API ----------------
 
         server.createContext("/api/server/health", ex -> handleSafely(ex, () -> {
             requireMethod(ex, "GET");
             boolean ok = db.ping();
-            sendJson(ex, 200, "{\"status\":\"ok\",\"serverTime\":\"" + Instant.now() + "\",\"dbOk\":" + ok + "}");
+            String lag = (journal == null) ? "" : ",\"journalLagBytes\":" + journal.lagBytes()
+                    + ",\"journalDeadLettered\":" + journal.deadLettered();
+            String dropped = (statsAggregator == null) ? "" : ",\"statsDroppedPlayers\":" + statsAggregator.droppedPlayers();
+            String sse = (sseHub == null) ? "" : ",\"sseDroppedFrames\":" + sseHub.droppedFrames();
+            sendJson(ex, 200, "{\"status\":\"ok\",\"serverTime\":\"" + Instant.now() + "\",\"dbOk\":" + ok + lag + dropped + sse + "}");
         }));
 
         server.createContext("/api/server/stats/batch", ex -> handleSafely(ex, () -> {
@@ -79,14 +134,39 @@ public final class HttpApiServer {
                 return;
             }
 
-            try {
-                JsonNode root = JsonUtil.OM.readTree(ex.getRequestBody().readAllBytes());
-                JsonNode players = root.get("players");
-                if (players == null || !players.isArray()) {
+            if (journal != null) {
+                acceptPlayersToJournal(ex, IngestJournal.STATS, null, readRawBody(ex));
+                return;
+            }
+
+            if (statsAggregator != null) {
+                try (InputStream in = compression.requestBody(ex)) {
+                    // Write-behind: deltas become visible to the flusher only once the whole body parsed.
+                    StatsAggregator.Staged staged = statsAggregator.stage();
+                    JsonUtil.ArrayStream body = JsonUtil.streamArrayField(in, "players", (p, fields) -> staged.add(p));
+                    if (!body.arrayFound()) {
+                        sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"players array missing\"}");
+                        return;
+                    }
+                    staged.commit();
+                    sendEmpty(ex, 200);
+                } catch (JsonProcessingException e) {
+                    sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"invalid_json\"}");
+                } catch (IllegalArgumentException e) {
+                    sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":" + Json.js(e.getMessage()) + "}");
+                }
+                return;
+            }
+
+            try (InputStream in = compression.requestBody(ex);
+                 StatsRepository.Batch batch = statsRepo.openBatch()) {
+                // Players are persisted while they are parsed; the body is never materialized.
+                JsonUtil.ArrayStream body = JsonUtil.streamArrayField(in, "players", (p, fields) -> batch.add(p));
+                if (!body.arrayFound()) {
                     sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"players array missing\"}");
                     return;
                 }
-                statsRepo.persistStatsPlayersArray(players);
+                batch.commit();
                 sendEmpty(ex, 200);
             } catch (JsonProcessingException e) {
                 sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"invalid_json\"}");
@@ -100,11 +180,110 @@ public final class HttpApiServer {
                 return;
             }
 
+            String cursorParam = queryParam(ex, "cursor");
+            if (cursorParam != null && !cursorParam.isBlank()) {
+                long cursor;
+                try {
+                    cursor = Long.parseLong(cursorParam.trim());
+                    if (cursor < 0) throw new NumberFormatException();
+                } catch (NumberFormatException e) {
+                    sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"invalid cursor\"}");
+                    return;
+                }
+                int limit = 0;
+                try { limit = Integer.parseInt(Objects.toString(queryParam(ex, "limit"), "0").trim()); } catch (Exception ignored) {}
+
+                if (notModified(ex, bansRepo.banChangesCursorEtag(cursor, limit))) return;
+                sendJson(ex, 200, bansRepo.fetchBanChangesByCursorJson(cursor, limit));
+                return;
+            }
+
+            // Legacy timestamp sync; kept for clients that have not moved to the cursor yet.
             String since = queryParam(ex, "since");
             if (since == null || since.isBlank()) since = "1970-01-01T00:00:00Z";
+
+            if (notModified(ex, bansRepo.banChangesEtag(since))) return;
             sendJson(ex, 200, bansRepo.fetchBanChangesJson(since));
         }));
 
+        server.createContext("/api/server/bans/snapshot", ex -> handleSafely(ex, () -> {
+            requireMethod(ex, "GET");
+            if (!serverAuth.isAuthorized(ex)) {
+                sendJson(ex, 401, "{\"error\":\"unauthorized\"}");
+                return;
+            }
+
+            // Chunked NDJSON straight from a streaming result set; nothing is buffered per request.
+            try (OutputStream out = compression.openStream(ex, 200, "application/x-ndjson; charset=utf-8")) {
+                bansRepo.writeBanSnapshot(out);
+            }
+        }));
+
+        server.createContext("/api/server/bans/bloom", ex -> handleSafely(ex, () -> {
+            requireMethod(ex, "GET");
+            if (!serverAuth.isAuthorized(ex)) {
+                sendJson(ex, 401, "{\"error\":\"unauthorized\"}");
+                return;
+            }
+
+            // Prebuilt in the background; the ETag is the filter version.
+            BanBloomFilter.Snapshot bloom = banBloom.current();
+            if (notModified(ex, banBloom.etag(bloom))) return;
+            compression.send(ex, 200, "application/octet-stream", bloom.encoded());
+        }));
+
+        server.createContext("/api/server/bans/stream", ex -> handleDetached(ex, () -> {
+            requireMethod(ex, "GET");
+            if (!serverAuth.isAuthorized(ex)) {
+                sendJson(ex, 401, "{\"error\":\"unauthorized\"}");
+                return false;
+            }
+
+            // EventSource reconnects send Last-Event-ID (the last seq received); it wins over ?cursor.
+            String resume = ex.getRequestHeaders().getFirst("Last-Event-ID");
+            if (resume == null || resume.isBlank()) resume = queryParam(ex, "cursor");
+            long cursor = 0;
+            if (resume != null && !resume.isBlank()) {
+                try {
+                    cursor = Long.parseLong(resume.trim());
+                    if (cursor < 0) throw new NumberFormatException();
+                } catch (NumberFormatException e) {
+                    sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"invalid cursor\"}");
+                    return false;
+                }
+            }
+
+            ex.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            ex.getResponseHeaders().set("Cache-Control", "no-cache, no-store, must-revalidate");
+            ex.getResponseHeaders().set("Connection", "keep-alive");
+            ex.sendResponseHeaders(200, 0);
+
+            sseHub.register(ex, banFeed, cursor);
+            return true;
+        }));
+
+        server.createContext("/api/server/bans/check", ex -> handleSafely(ex, () -> {
+            if (!serverAuth.isAuthorized(ex)) {
+                sendJson(ex, 401, "{\"error\":\"unauthorized\"}");
+                return;
+            }
+
+            // Answered from the in-memory ban index; no DB access.
+            if (isMethod(ex, "GET")) {
+                sendJson(ex, 200, bansRepo.checkBanJson(queryParam(ex, "xuid"), queryParam(ex, "ip"), queryParam(ex, "hwid")));
+                return;
+            }
+            requireMethod(ex, "POST");
+
+            try {
+                sendJson(ex, 200, bansRepo.checkBansJson(readJsonBody(ex).get("players"), 1000));
+            } catch (JsonProcessingException e) {
+                sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"invalid_json\"}");
+            } catch (IllegalArgumentException e) {
+                sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":" + Json.js(e.getMessage()) + "}");
+            }
+        }));
+
         server.createContext("/api/server/metrics", ex -> handleSafely(ex, () -> {
             requireMethod(ex, "POST");
             if (!serverAuth.isAuthorized(ex)) {
@@ -112,13 +291,19 @@ public final class HttpApiServer {
                 return;
             }
 
-            JsonNode root = JsonUtil.OM.readTree(ex.getRequestBody().readAllBytes());
+            JsonNode root = readJsonBody(ex);
             String serverKey = root.path("serverKey").asText(null);
             if (serverKey == null || serverKey.isBlank()) {
                 sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"serverKey missing\"}");
                 return;
             }
 
+            if (journal != null) {
+                appendToJournal(IngestJournal.METRICS, JsonUtil.OM.writeValueAsBytes(root));
+                sendEmpty(ex, 202);
+                return;
+            }
+
             metricsRepo.ingest(serverKey, root);
             sendEmpty(ex, 200);
         }));
@@ -130,15 +315,22 @@ public final class HttpApiServer {
                 return;
             }
 
-            JsonNode root = JsonUtil.OM.readTree(ex.getRequestBody().readAllBytes());
-            JsonNode players = root.get("players");
-            if (players == null || !players.isArray()) {
-                sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"players array missing\"}");
+            // Header/query key wins; otherwise the body's "serverKey" is used.
+            String serverKey = ex.getRequestHeaders().getFirst("X-Server-Key");
+            if (serverKey == null || serverKey.isBlank()) serverKey = queryParam(ex, "serverKey");
+
+            if (journal == null) {
+                ingestPresence(ex, compression.requestBody(ex), serverKey);
                 return;
             }
 
-            presenceRepo.upsertPresencePlayersArray(players);
-            sendEmpty(ex, 200);
+            // Sequenced presence needs the registry's answer now, so it bypasses the journal.
+            byte[] raw = readRawBody(ex);
+            if (isSequencedPresence(raw)) {
+                ingestPresence(ex, new ByteArrayInputStream(raw), serverKey);
+            } else {
+                acceptPlayersToJournal(ex, IngestJournal.PRESENCE, serverKey, raw);
+            }
         }));
 
         server.createContext("/api/server/bans/report", ex -> handleSafely(ex, () -> {
@@ -148,7 +340,7 @@ public final class HttpApiServer {
                 return;
             }
 
-            JsonNode root = JsonUtil.OM.readTree(ex.getRequestBody().readAllBytes());
+            JsonNode root = readJsonBody(ex);
             String serverKey = root.path("serverKey").asText(null);
             JsonNode ban = root.get("ban");
             if (serverKey == null || serverKey.isBlank() || ban == null || ban.isNull()) {
@@ -156,27 +348,93 @@ public final class HttpApiServer {
                 return;
             }
 
-            bansRepo.reportServerBan(serverKey, ban);
-            sendEmpty(ex, 200);
+            try {
+                BansRepository.validateBanNode(ban);
+                if (journal != null) {
+                    appendToJournal(IngestJournal.BAN_REPORT, JsonUtil.OM.writeValueAsBytes(root));
+                    sendEmpty(ex, 202);
+                    return;
+                }
+
+                bansRepo.reportServerBan(serverKey, ban);
+                sendEmpty(ex, 200);
+            } catch (IllegalArgumentException e) {
+                sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":" + Json.js(e.getMessage()) + "}");
+            }
         }));
 
-        server.createContext("/api/server/commands/poll", ex -> handleSafely(ex, () -> {
-            requireMethod(ex, "GET");
+        server.createContext("/api/server/bans/report/batch", ex -> handleSafely(ex, () -> {
+            requireMethod(ex, "POST");
             if (!serverAuth.isAuthorized(ex)) {
                 sendJson(ex, 401, "{\"error\":\"unauthorized\"}");
                 return;
             }
 
+            JsonNode root = readJsonBody(ex);
+            String serverKey = root.path("serverKey").asText(null);
+            JsonNode bans = root.get("bans");
+            if (serverKey == null || serverKey.isBlank() || bans == null || !bans.isArray()) {
+                sendJson(ex, 400, "{\"error\":\"bad_request\"}");
+                return;
+            }
+            if (bans.size() > BAN_REPORT_BATCH_MAX) {
+                sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"at most " + BAN_REPORT_BATCH_MAX + " bans per batch\"}");
+                return;
+            }
+
+            // Always written synchronously (not journaled): the caller gets the ban ids back.
+            List<JsonNode> list = new ArrayList<>(bans.size());
+            bans.forEach(list::add);
+            try {
+                List<Long> banIds = bansRepo.reportServerBans(serverKey, list);
+
+                StringBuilder out = new StringBuilder(16 + banIds.size() * 12).append("{\"banIds\":[");
+                for (int i = 0; i < banIds.size(); i++) {
+                    if (i > 0) out.append(',');
+                    out.append(banIds.get(i));
+                }
+                sendJson(ex, 200, out.append("]}").toString());
+            } catch (IllegalArgumentException e) {
+                sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":" + Json.js(e.getMessage()) + "}");
+            }
+        }));
+
+        server.createContext("/api/server/commands/poll", ex -> handleDetached(ex, () -> {
+            requireMethod(ex, "GET");
+            if (!serverAuth.isAuthorized(ex)) {
+                sendJson(ex, 401, "{\"error\":\"unauthorized\"}");
+                return false;
+            }
+
             String serverKey = queryParam(ex, "serverKey");
             if (serverKey == null || serverKey.isBlank()) {
                 sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"serverKey missing\"}");
-                return;
+                return false;
             }
 
             long sinceId = 0L;
             try { sinceId = Long.parseLong(String.valueOf(queryParam(ex, "sinceId"))); } catch (Exception ignored) {}
 
+            long waitMs = 0L;
+            try { waitMs = Long.parseLong(String.valueOf(queryParam(ex, "waitMs"))); } catch (Exception ignored) {}
+            waitMs = Math.max(0L, Math.min(waitMs, COMMAND_WAIT_MAX_MS));
+
+            // Piggy-backed acks for the previous response (applied before the poll reads).
+            try {
+                String ack = queryParam(ex, "ack");
+                if (ack != null && !ack.isBlank()) commandsRepo.ackCommands(serverKey, parseIds(List.of(ack.split(","))));
+                String upTo = queryParam(ex, "ackUpToId");
+                if (upTo != null && !upTo.isBlank()) commandsRepo.ackCommandsUpTo(serverKey, parseId(upTo));
+            } catch (IllegalArgumentException e) {
+                sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":" + Json.js(e.getMessage()) + "}");
+                return false;
+            }
+
+            if (waitMs > 0) return new CommandWait(ex, serverKey.trim(), sinceId, waitMs).start();
+
+            if (notModified(ex, commandsRepo.pollEtag(serverKey, sinceId))) return false;
             sendJson(ex, 200, commandsRepo.pollOpenCommandsJson(serverKey, sinceId, 50));
+            return false;
         }));
 
         server.createContext("/api/server/commands/ack", ex -> handleSafely(ex, () -> {
@@ -186,16 +444,44 @@ public final class HttpApiServer {
                 return;
             }
 
-            JsonNode root = JsonUtil.OM.readTree(ex.getRequestBody().readAllBytes());
+            JsonNode root = readJsonBody(ex);
             String serverKey = root.path("serverKey").asText(null);
-            long id = root.path("id").asLong(0);
+            JsonNode ids = root.get("ids");
 
-            if (serverKey == null || serverKey.isBlank() || id <= 0) {
+            // Everything is validated before the first ack, so a bad field acks nothing.
+            long id;
+            long upToId;
+            List<Long> idList = List.of();
+            try {
+                id = jsonId(root.get("id"));
+                upToId = jsonId(root.get("upToId"));
+                if (ids != null && !ids.isNull()) {
+                    if (!ids.isArray()) throw new IllegalArgumentException("ids must be an array");
+                    List<String> raw = new ArrayList<>(ids.size());
+                    for (JsonNode n : ids) {
+                        if (!isJsonId(n)) throw new IllegalArgumentException("invalid id: " + n);
+                        raw.add(n.asText());
+                    }
+                    idList = parseIds(raw);
+                }
+            } catch (IllegalArgumentException e) {
+                sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":" + Json.js(e.getMessage()) + "}");
+                return;
+            }
+
+            if (serverKey == null || serverKey.isBlank() || (id <= 0 && (ids == null || ids.isNull()) && upToId <= 0)) {
                 sendJson(ex, 400, "{\"error\":\"bad_request\"}");
                 return;
             }
 
-            commandsRepo.ackCommand(serverKey, id);
+            try {
+                if (id > 0) commandsRepo.ackCommand(serverKey, id);
+                if (!idList.isEmpty()) commandsRepo.ackCommands(serverKey, idList);
+                if (upToId > 0) commandsRepo.ackCommandsUpTo(serverKey, upToId);
+            } catch (IllegalArgumentException e) {
+                sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":" + Json.js(e.getMessage()) + "}");
+                return;
+            }
             sendEmpty(ex, 200);
         }));
 
@@ -302,7 +588,16 @@ public final class HttpApiServer {
                 if (h != null && !h.isBlank()) hours = Integer.parseInt(h.trim());
             } catch (Exception ignored) {}
 
-            adminRepo.banPlayerByXuid(xuid, reason, hours);
+            // Optional IP ranges, separated by commas or whitespace.
+            String rangesField = Objects.toString(formField(body, "cidrs"), "").trim();
+            List<String> cidrs = rangesField.isEmpty() ? List.of() : List.of(rangesField.split("[,\\s]+"));
+
+            try {
+                adminRepo.banPlayerByXuid(xuid, reason, hours, cidrs);
+            } catch (IllegalArgumentException e) {
+                redirect(ex, "/admin/player?xuid=" + urlEncodeQuery(xuid) + "&err=" + urlEncodeQuery(e.getMessage()));
+                return;
+            }
             redirect(ex, "/admin/player?xuid=" + urlEncodeQuery(xuid) + "&ok=" + urlEncodeQuery("Banned"));
         }));
 
@@ -469,9 +764,22 @@ public final class HttpApiServer {
             sendJson(ex, 200, adminRepo.statsHistoryJson(serverKey, limit));
         }));
 
-        server.createContext("/admin/api/live/stream", ex -> handleSafely(ex, () -> {
+        server.createContext("/admin/api/player/linked", ex -> handleSafely(ex, () -> {
             requireMethod(ex, "GET");
             if (!requireAdmin(ex)) return;
+            if (!requirePerm(ex, "players.view")) return;
+
+            String xuid = queryParam(ex, "xuid");
+            if (xuid == null || xuid.isBlank()) {
+                sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"xuid missing\"}");
+                return;
+            }
+            sendJson(ex, 200, adminRepo.linkedAccountsJson(xuid.trim()));
+        }));
+
+        server.createContext("/admin/api/live/stream", ex -> handleDetached(ex, () -> {
+            requireMethod(ex, "GET");
+            if (!requireAdmin(ex)) return false;
 
             ex.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
             ex.getResponseHeaders().set("Cache-Control", "no-cache, no-store, must-revalidate");
@@ -479,28 +787,22 @@ public final class HttpApiServer {
             ex.getResponseHeaders().set("Connection", "keep-alive");
             ex.sendResponseHeaders(200, 0);
 
-            LiveBus.Subscriber sub = LiveBus.subscribe();
-            try (OutputStream os = ex.getResponseBody()) {
-                try {
-                    writeSse(os, "hello", "{\"ok\":true}");
-                    os.flush();
-
-                    while (true) {
-                        LiveBus.SseEvent ev = sub.poll(15_000);
-                        if (ev == null) {
-                            os.write((": keep-alive\n\n").getBytes(StandardCharsets.UTF_8));
-                            os.flush();
-                            continue;
-                        }
-                        writeSse(os, ev.event(), ev.dataJson());
-                        os.flush();
-                    }
-                } catch (IOException clientDisconnected) {
-                    // ignore
-                }
-            } finally {
-                LiveBus.unsubscribe(sub.id());
+            // The hub owns the stream from here; this worker thread returns immediately.
+            sseHub.register(ex);
+            return true;
+        }));
+
+        // -------- Admin static assets (fingerprinted, immutable) --------
+
+        server.createContext(AdminStaticAssets.PREFIX, ex -> handleSafely(ex, () -> {
+            requireMethod(ex, "GET");
+
+            AdminStaticAssets.Asset asset = AdminStaticAssets.byPath(ex.getRequestURI().getPath());
+            if (asset == null) {
+                sendEmpty(ex, 404);
+                return;
             }
+            sendStaticAsset(ex, asset);
         }));
 
         server.createContext("/", ex -> handleSafely(ex, () -> {
@@ -511,6 +813,7 @@ public final class HttpApiServer {
         server.start();
         System.out.println("[BackendBridgeService] Listening on http://" + cfg.web().bind() + ":" + cfg.web().port());
         System.out.println("[BackendBridgeService] Server auth enabled: " + serverAuth.isEnabled());
+        System.out.println("[BackendBridgeService] Admin assets: " + AdminStaticAssets.css().path() + ", " + AdminStaticAssets.js().path());
     }
 
     public void stop() {
@@ -518,16 +821,63 @@ public final class HttpApiServer {
             server.stop(1);
             server = null;
         }
+        if (sseHub != null) {
+            sseHub.stop();
+            sseHub = null;
+        }
+        if (commandWaitTimer != null) {
+            commandWaitTimer.shutdownNow();
+            commandWaitTimer = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Creates the request executor selected by {@code web.executor}.
+     *
+     * <p>"virtual" runs every exchange on its own virtual thread, so parked requests
+     * (SSE streams, slow clients) no longer take capacity away from server ingest.
+     * Blocking JDBC is fine there: Connector/J 9.x guards its socket I/O with
+     * ReentrantLock instead of monitors and Hikari hands out connections through a
+     * SynchronousQueue, so waiting for a connection or a result does not pin the carrier.
+     * DB concurrency stays bounded by {@code db.maxPoolSize}.</p>
+     *
+     * <p>Resolved reflectively because the build targets Java 17; older runtimes fall back
+     * to the fixed pool.</p>
+     */
+    private static ExecutorService newRequestExecutor(AppConfig.Web web) {
+        if ("virtual".equals(web.executor())) {
+            try {
+                Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                ExecutorService es = (ExecutorService) m.invoke(null);
+                System.out.println("[BackendBridgeService] HTTP executor: virtual threads");
+                return es;
+            } catch (ReflectiveOperationException e) {
+                System.out.println("[BackendBridgeService] Virtual threads unavailable on Java "
+                        + Runtime.version().feature() + ", falling back to fixed pool");
+            }
+        }
+        System.out.println("[BackendBridgeService] HTTP executor: fixed pool (" + web.workerThreads() + " threads)");
+        return Executors.newFixedThreadPool(web.workerThreads());
     }
 
     @FunctionalInterface
     private interface ExchangeHandler { void run() throws Exception; }
 
-    private static void handleSafely(HttpExchange ex, ExchangeHandler h) {
+    /** Returns true when ownership of the exchange was handed off (caller must not close it). */
+    @FunctionalInterface
+    private interface DetachingHandler { boolean run() throws Exception; }
+
+    private void handleSafely(HttpExchange ex, ExchangeHandler h) {
         try {
             h.run();
         } catch (MethodNotAllowed e) {
             safeHtml(ex, 405, "<h1>405</h1>");
+        } catch (HttpCompression.BodyRejected e) {
+            safeJson(ex, e.status(), "{\"error\":" + Json.js(e.error()) + "}");
         } catch (IOException clientDisconnected) {
             // ignore
         } catch (Exception e) {
@@ -537,7 +887,181 @@ public final class HttpApiServer {
         }
     }
 
-    private static void safeHtml(HttpExchange ex, int status, String html) {
+    private void handleDetached(HttpExchange ex, DetachingHandler h) {
+        boolean detached = false;
+        try {
+            detached = h.run();
+        } catch (MethodNotAllowed e) {
+            safeHtml(ex, 405, "<h1>405</h1>");
+        } catch (HttpCompression.BodyRejected e) {
+            safeJson(ex, e.status(), "{\"error\":" + Json.js(e.error()) + "}");
+        } catch (IOException clientDisconnected) {
+            // ignore
+        } catch (Exception e) {
+            safeHtml(ex, 500, "<h1>500</h1><pre>" + esc(e) + "</pre>");
+        } finally {
+            if (!detached) {
+                try { ex.close(); } catch (Exception ignored) {}
+            }
+        }
+    }
+
+    /**
+     * A long-poll on {@code commands/poll}: answered as soon as the server key has commands the
+     * client does not have yet (its ETag differs and at least one is open), otherwise at the
+     * deadline with 304 or the empty result. While parked it holds no thread; enqueue/ack
+     * in this process wake it through {@link CommandsRepository#onNextChange}, and the ETag
+     * watermark is re-checked every {@link #COMMAND_RECHECK_MS} for commands inserted directly
+     * into the database.
+     */
+    private final class CommandWait {
+        private final HttpExchange ex;
+        private final String serverKey;
+        private final long sinceId;
+        private final long deadlineMs;
+        private final Runnable waker = this::wake;
+
+        private boolean done;
+        private Runnable unregister;
+        private ScheduledFuture<?> timeout;
+        private ScheduledFuture<?> poller;
+        /** Watermark the last full check saw; the rows are only read again once it moves. */
+        private String lastEtag;
+
+        CommandWait(HttpExchange ex, String serverKey, long sinceId, long waitMs) {
+            this.ex = ex;
+            this.serverKey = serverKey;
+            this.sinceId = sinceId;
+            this.deadlineMs = System.currentTimeMillis() + waitMs;
+        }
+
+        /**
+         * Returns true if the request was parked (the exchange is owned by this wait).
+         */
+        synchronized boolean start() throws Exception {
+            // Register before looking, so an enqueue racing the check still wakes us.
+            unregister = commandsRepo.onNextChange(serverKey, waker);
+            try {
+                if (answerIfReady()) {
+                    done = true;
+                    return false;
+                }
+            } catch (Exception e) {
+                done = true;
+                unregister.run();
+                throw e;
+            }
+            timeout = commandWaitTimer.schedule(() -> executor.execute(this::expire),
+                    Math.max(0L, deadlineMs - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            poller = commandWaitTimer.scheduleWithFixedDelay(this::wake,
+                    COMMAND_RECHECK_MS, COMMAND_RECHECK_MS, TimeUnit.MILLISECONDS);
+            return true;
+        }
+
+        /** Runs on the enqueuing thread: hand off. */
+        private void wake() {
+            ExecutorService es = executor;
+            if (es != null) es.execute(this::recheck);
+        }
+
+        private synchronized void recheck() {
+            if (done) return;
+            try {
+                unregister = commandsRepo.onNextChange(serverKey, waker);
+                if (answerIfReady()) finish();
+            } catch (Exception e) {
+                fail();
+            }
+        }
+
+        private synchronized void expire() {
+            if (done) return;
+            try {
+                if (!notModified(ex, commandsRepo.pollEtag(serverKey, sinceId))) {
+                    sendJson(ex, 200, commandsRepo.pollOpenCommandsJson(serverKey, sinceId, 50));
+                }
+            } catch (Exception ignored) {
+                // client gone or DB error; the client polls again
+            }
+            finish();
+        }
+
+        private boolean answerIfReady() throws Exception {
+            String etag = commandsRepo.pollEtag(serverKey, sinceId);
+            if (etagMatches(ex, etag) || etag.equals(lastEtag)) return false;
+            lastEtag = etag;
+
+            CommandsRepository.Poll poll = commandsRepo.pollOpenCommands(serverKey, sinceId, 50);
+            if (poll.commands() == 0) return false;
+
+            unregister.run();
+            ex.getResponseHeaders().set("ETag", etag);
+            ex.getResponseHeaders().set("Cache-Control", "no-cache");
+            sendJson(ex, 200, poll.json());
+            return true;
+        }
+
+        private void finish() {
+            done = true;
+            unregister.run();
+            if (timeout != null) timeout.cancel(false);
+            if (poller != null) poller.cancel(false);
+            try { ex.close(); } catch (Exception ignored) {}
+        }
+
+        private void fail() {
+            safeJson(ex, 500, "{\"error\":\"internal\"}");
+            finish();
+        }
+    }
+
+    /**
+     * Command ids for a batch ack; throws IllegalArgumentException for non-numeric or too many ids.
+     */
+    private static List<Long> parseIds(List<String> raw) {
+        if (raw.size() > CommandsRepository.MAX_ACK_IDS) {
+            throw new IllegalArgumentException("at most " + CommandsRepository.MAX_ACK_IDS + " ids per ack");
+        }
+        List<Long> out = new ArrayList<>(raw.size());
+        for (String r : raw) {
+            if (!r.isBlank()) out.add(parseId(r));
+        }
+        return out;
+    }
+
+    /**
+     * Only integers and numeric strings; anything else would otherwise read as 0 or be skipped.
+     */
+    private static boolean isJsonId(JsonNode n) {
+        return n.isIntegralNumber() || (n.isTextual() && !n.asText().isBlank());
+    }
+
+    /**
+     * Optional id field of a JSON body: 0 if absent or null, else a positive id.
+     */
+    private static long jsonId(JsonNode n) {
+        if (n == null || n.isNull()) return 0L;
+        if (!isJsonId(n)) throw new IllegalArgumentException("invalid id: " + n);
+        return parseId(n.asText());
+    }
+
+    private static long parseId(String raw) {
+        try {
+            long id = Long.parseLong(raw.trim());
+            if (id > 0) return id;
+        } catch (NumberFormatException ignored) {}
+        throw new IllegalArgumentException("invalid id: " + raw.trim());
+    }
+
+    private void safeJson(HttpExchange ex, int status, String json) {
+        try {
+            sendJson(ex, status, json);
+        } catch (Exception ignored) {
+            try { ex.sendResponseHeaders(status, -1); } catch (Exception ignored2) {}
+        }
+    }
+
+    private void safeHtml(HttpExchange ex, int status, String html) {
         try {
             sendHtml(ex, status, html);
         } catch (Exception ignored) {
@@ -606,27 +1130,181 @@ public final class HttpApiServer {
         ex.sendResponseHeaders(status, -1);
     }
 
-    private static void sendJson(HttpExchange ex, int status, String json) throws IOException {
-        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
-        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
-        ex.sendResponseHeaders(status, bytes.length);
-        try (OutputStream os = ex.getResponseBody()) {
-            os.write(bytes);
+    /**
+     * Parses a server POST body straight from the (possibly gzip/deflate encoded) request stream.
+     */
+    private JsonNode readJsonBody(HttpExchange ex) throws IOException {
+        try (InputStream in = compression.requestBody(ex)) {
+            return JsonUtil.OM.readTree(in);
+        }
+    }
+
+    /**
+     * Presence in snapshot, event or delta mode (see {@link PresenceRepository}).
+     * Snapshot/event players are written while they are parsed; delta bodies are small.
+     * Every reported online player is also checked against the ban index (exact ids and IP
+     * ranges); hits are returned as {@code "banned"} so the server can kick them.
+     */
+    private void ingestPresence(HttpExchange ex, InputStream body, String serverKey) throws Exception {
+        Instant now = Instant.now();
+        List<String> banned = new ArrayList<>();
+
+        try (InputStream in = body;
+             PresenceRepository.Batch batch = presenceRepo.openBatch(serverKey)) {
+            JsonUtil.ArrayStream parsed = JsonUtil.streamArrayField(in, "players", (p, fields) -> {
+                batch.add(p, fields);
+                checkBan(p, now, banned);
+            });
+
+            if (PresenceRepository.isDeltaMode(parsed.fields())) {
+                PresenceRepository.DeltaResult r = batch.commitDelta(parsed.fields());
+                for (JsonNode j : parsed.fields().path("joins")) checkBan(j, now, banned);
+                sendJson(ex, 200, "{\"resyncRequired\":" + r.resyncRequired() + ",\"seq\":" + r.seq()
+                        + ",\"banned\":[" + String.join(",", banned) + "]}");
+                return;
+            }
+
+            if (!parsed.arrayFound()) {
+                sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"players array missing\"}");
+                return;
+            }
+            batch.commit(parsed.fields());
+            sendJson(ex, 200, "{\"banned\":[" + String.join(",", banned) + "]}");
+        } catch (JsonProcessingException e) {
+            sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"invalid_json\"}");
+        } catch (IllegalArgumentException e) {
+            sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":" + Json.js(e.getMessage()) + "}");
+        }
+    }
+
+    private void checkBan(JsonNode p, Instant now, List<String> out) {
+        if (p == null || !p.isObject()) return;
+        if (p.path("online").isBoolean() && !p.path("online").asBoolean()) return;
+
+        String xuid = p.path("xuid").asText(null);
+        BanIndex.Match m = bansRepo.banIndex().check(xuid, p.path("ip").asText(null), p.path("hwid").asText(null), now);
+        if (m == null) return;
+
+        BanIndex.Ban b = m.ban();
+        out.add("{\"xuid\":" + Json.js(xuid)
+                + ",\"banId\":" + b.banId()
+                + ",\"matchedOn\":" + Json.js(m.matchedOn().name())
+                + ",\"reason\":" + Json.js(b.reason())
+                + ",\"expiresAt\":" + (b.expiresAt() == null ? "null" : Json.js(b.expiresAt().toString())) + "}");
+    }
+
+    private static boolean isSequencedPresence(byte[] raw) {
+        try {
+            JsonUtil.ArrayStream peek = JsonUtil.streamArrayField(new ByteArrayInputStream(raw), "players", (p, fields) -> {});
+            return PresenceRepository.isSequenced(peek.fields());
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decoded request body, capped by limits.maxRequestBodyBytes.
+     */
+    private byte[] readRawBody(HttpExchange ex) throws IOException {
+        try (InputStream in = compression.requestBody(ex)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Journal mode: checks that the body has a "players" array, appends it and answers 202.
+     * A non-null {@code serverKey} (from header/query) is kept in the record envelope.
+     */
+    private void acceptPlayersToJournal(HttpExchange ex, byte type, String serverKey, byte[] raw) throws Exception {
+        PresenceRepository.FieldOrder order = new PresenceRepository.FieldOrder(serverKey);
+        try {
+            JsonUtil.ArrayStream body = JsonUtil.streamArrayField(new ByteArrayInputStream(raw), "players", (p, fields) -> {
+                if (type == IngestJournal.PRESENCE) order.player(fields);
+            });
+            if (!body.arrayFound()) {
+                sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"players array missing\"}");
+                return;
+            }
+            order.check(body.fields());
+        } catch (JsonProcessingException e) {
+            sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":\"invalid_json\"}");
+            return;
+        } catch (IllegalArgumentException e) {
+            sendJson(ex, 400, "{\"error\":\"bad_request\",\"details\":" + Json.js(e.getMessage()) + "}");
+            return;
         }
+
+        appendToJournal(type, (type == IngestJournal.PRESENCE) ? JournalApplier.presenceRecord(serverKey, raw) : raw);
+        sendEmpty(ex, 202);
     }
 
-    private static void sendHtml(HttpExchange ex, int status, String html) throws IOException {
-        byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
-        ex.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
-        ex.sendResponseHeaders(status, bytes.length);
+    /**
+     * A record must fit one journal segment; larger bodies are answered 413.
+     */
+    private void appendToJournal(byte type, byte[] payload) throws IOException {
+        if (payload.length > journal.maxRecordBytes()) throw new HttpCompression.BodyRejected(413, "payload_too_large");
+        journal.append(type, payload);
+    }
+
+    private void sendJson(HttpExchange ex, int status, String json) throws IOException {
+        compression.send(ex, status, "application/json; charset=utf-8", json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void sendJson(HttpExchange ex, int status, byte[] json) throws IOException {
+        compression.send(ex, status, "application/json; charset=utf-8", json);
+    }
+
+    private void sendHtml(HttpExchange ex, int status, String html) throws IOException {
+        compression.send(ex, status, "text/html; charset=utf-8", html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendStaticAsset(HttpExchange ex, AdminStaticAssets.Asset asset) throws IOException {
+        boolean gzip = "gzip".equals(HttpCompression.negotiate(ex));
+        String etag = gzip ? asset.gzipEtag() : asset.etag();
+
+        ex.getResponseHeaders().set("Cache-Control", "public, max-age=31536000, immutable");
+        ex.getResponseHeaders().set("Vary", "Accept-Encoding");
+        ex.getResponseHeaders().set("ETag", etag);
+
+        if (etagMatches(ex, asset.etag()) || etagMatches(ex, asset.gzipEtag())) {
+            ex.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        byte[] body = gzip ? asset.gzip() : asset.raw();
+        ex.getResponseHeaders().set("Content-Type", asset.contentType());
+        if (gzip) ex.getResponseHeaders().set("Content-Encoding", "gzip");
+        ex.sendResponseHeaders(200, body.length);
         try (OutputStream os = ex.getResponseBody()) {
-            os.write(bytes);
+            os.write(body);
         }
     }
 
-    private static void writeSse(OutputStream os, String event, String jsonOneLine) throws IOException {
-        os.write(("event: " + event + "\n").getBytes(StandardCharsets.UTF_8));
-        os.write(("data: " + (jsonOneLine == null ? "{}" : jsonOneLine) + "\n\n").getBytes(StandardCharsets.UTF_8));
+    /**
+     * Sets the validator headers for a polled resource and answers 304 if the client
+     * already holds {@code etag}. Returns true when the response was sent.
+     */
+    private static boolean notModified(HttpExchange ex, String etag) throws IOException {
+        ex.getResponseHeaders().set("ETag", etag);
+        ex.getResponseHeaders().set("Cache-Control", "no-cache");
+        if (!etagMatches(ex, etag)) return false;
+        ex.sendResponseHeaders(304, -1);
+        return true;
+    }
+
+    /**
+     * True if If-None-Match lists {@code etag} (or "*"). Weak validators compare by opaque tag.
+     */
+    private static boolean etagMatches(HttpExchange ex, String etag) {
+        String inm = ex.getRequestHeaders().getFirst("If-None-Match");
+        if (inm == null || inm.isBlank() || etag == null) return false;
+        for (String part : inm.split(",")) {
+            String t = part.trim();
+            if (t.equals("*")) return true;
+            if (t.startsWith("W/")) t = t.substring(2);
+            if (t.equals(etag)) return true;
+        }
+        return false;
     }
 
     private static String queryParam(HttpExchange ex, String key) {
@@ -0,0 +1,224 @@
+package org.backendbridge;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * HTTP content coding.
+ *
+ * <p>Responses: gzip/deflate negotiated from {@code Accept-Encoding}.</p>
+ * <ul>
+ *   <li>only bodies of at least {@code minBytes} are compressed (small JSON is cheaper raw)</li>
+ *   <li>routes listed in {@code disabledRoutes} (path prefixes) are always sent raw</li>
+ *   <li>compressed bodies are streamed with chunked transfer encoding, no Content-Length</li>
+ * </ul>
+ *
+ * <p>Requests: bodies with {@code Content-Encoding: gzip|deflate} are inflated on the fly
+ * while the JSON parser reads them. The decoded size is capped at {@code maxBodyBytes}
+ * (also for uncompressed bodies) to guard against decompression bombs.</p>
+ */
+public final class HttpCompression {
+
+    private final boolean enabled;
+    private final int minBytes;
+    private final List<String> disabledRoutes;
+    private final long maxBodyBytes;
+
+    public HttpCompression(AppConfig.CompressionCfg cfg, long maxBodyBytes) {
+        this.enabled = cfg.enabled();
+        this.minBytes = Math.max(0, cfg.minBytes());
+        this.disabledRoutes = List.copyOf(cfg.disabledRoutes());
+        this.maxBodyBytes = Math.max(1, maxBodyBytes);
+    }
+
+    /**
+     * Returns the decoded request body stream.
+     *
+     * @throws BodyRejected 415 for unknown encodings; 413/400 are raised while reading
+     */
+    public InputStream requestBody(HttpExchange ex) throws IOException {
+        String enc = ex.getRequestHeaders().getFirst("Content-Encoding");
+        enc = (enc == null) ? "" : enc.trim().toLowerCase(Locale.ROOT);
+
+        InputStream raw = ex.getRequestBody();
+        InputStream decoded;
+        try {
+            decoded = switch (enc) {
+                case "", "identity" -> raw;
+                case "gzip", "x-gzip" -> new GZIPInputStream(raw, 8192);
+                case "deflate" -> new InflaterInputStream(raw);
+                default -> throw new BodyRejected(415, "unsupported_content_encoding");
+            };
+        } catch (ZipException ze) {
+            throw new BodyRejected(400, "invalid_content_encoding");
+        }
+        return new LimitedInputStream(decoded, maxBodyBytes);
+    }
+
+    /**
+     * Sends a complete body, compressed when the client accepts it and the route/size allow it.
+     */
+    public void send(HttpExchange ex, int status, String contentType, byte[] body) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", contentType);
+
+        boolean allowed = routeAllows(ex);
+        if (allowed) ex.getResponseHeaders().add("Vary", "Accept-Encoding");
+        String enc = allowed ? negotiate(ex) : null;
+
+        if (enc == null || body.length < minBytes) {
+            ex.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+            if (body.length == 0) return;
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(body);
+            }
+            return;
+        }
+
+        try (OutputStream os = openEncoded(ex, status, enc)) {
+            os.write(body);
+        }
+    }
+
+    /**
+     * Starts a streamed (chunked) response and returns the body stream, compressed if negotiated.
+     * The caller must close the returned stream.
+     */
+    public OutputStream openStream(HttpExchange ex, int status, String contentType) throws IOException {
+        ex.getResponseHeaders().set("Content-Type", contentType);
+
+        boolean allowed = routeAllows(ex);
+        if (allowed) ex.getResponseHeaders().add("Vary", "Accept-Encoding");
+        String enc = allowed ? negotiate(ex) : null;
+
+        if (enc == null) {
+            ex.sendResponseHeaders(status, 0);
+            return ex.getResponseBody();
+        }
+        return openEncoded(ex, status, enc);
+    }
+
+    private static OutputStream openEncoded(HttpExchange ex, int status, String enc) throws IOException {
+        ex.getResponseHeaders().set("Content-Encoding", enc);
+        ex.sendResponseHeaders(status, 0);
+        OutputStream raw = ex.getResponseBody();
+        return "gzip".equals(enc)
+                ? new GZIPOutputStream(raw, 8192)
+                : new DeflaterOutputStream(raw);
+    }
+
+    private boolean routeAllows(HttpExchange ex) {
+        if (!enabled) return false;
+        String path = ex.getRequestURI().getPath();
+        for (String p : disabledRoutes) {
+            if (path.startsWith(p)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns "gzip", "deflate" or null. Honors q=0 exclusions and prefers gzip on ties.
+     */
+    static String negotiate(HttpExchange ex) {
+        String header = ex.getRequestHeaders().getFirst("Accept-Encoding");
+        if (header == null || header.isBlank()) return null;
+
+        double gzip = -1, deflate = -1, any = -1;
+        for (String part : header.split(",")) {
+            String[] kv = part.trim().split(";");
+            String coding = kv[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1.0;
+            for (int i = 1; i < kv.length; i++) {
+                String param = kv[i].trim();
+                if (param.startsWith("q=")) {
+                    try { q = Double.parseDouble(param.substring(2)); } catch (Exception ignored) { q = 0; }
+                }
+            }
+            switch (coding) {
+                case "gzip", "x-gzip" -> gzip = q;
+                case "deflate" -> deflate = q;
+                case "*" -> any = q;
+                default -> { }
+            }
+        }
+
+        if (gzip < 0) gzip = any;
+        if (deflate < 0) deflate = any;
+
+        if (gzip > 0 && gzip >= deflate) return "gzip";
+        if (deflate > 0) return "deflate";
+        return null;
+    }
+
+    /**
+     * Request body could not be accepted; carries the HTTP status to answer with.
+     */
+    public static final class BodyRejected extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+        private final String error;
+
+        public BodyRejected(int status, String error) {
+            super(error);
+            this.status = status;
+            this.error = error;
+        }
+
+        public int status() { return status; }
+        public String error() { return error; }
+    }
+
+    /**
+     * Counts decoded bytes and fails once the cap is exceeded.
+     */
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long max;
+        private long read;
+
+        private LimitedInputStream(InputStream in, long max) {
+            super(in);
+            this.max = max;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = guard(() -> super.read());
+            if (b >= 0) count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = guard(() -> super.read(buf, off, len));
+            if (n > 0) count(n);
+            return n;
+        }
+
+        private void count(int n) throws BodyRejected {
+            read += n;
+            if (read > max) throw new BodyRejected(413, "payload_too_large");
+        }
+
+        private static int guard(IoRead r) throws IOException {
+            try {
+                return r.read();
+            } catch (ZipException ze) {
+                throw new BodyRejected(400, "invalid_content_encoding");
+            }
+        }
+
+        @FunctionalInterface
+        private interface IoRead { int read() throws IOException; }
+    }
+}
@@ -0,0 +1,417 @@
+package org.backendbridge;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped ingest journal (write-ahead log).
+ *
+ * <p>Ingest endpoints append the validated request body and answer 202; a single applier
+ * thread drains the journal into the repositories in append order.</p>
+ *
+ * <p>Layout:</p>
+ * - {@code dir/segment-<base>.wal}: fixed-size mapped files, {@code base} is the global
+ *   position of the first byte; segments are contiguous
+ * - record: {@code [int len][int crc32(type+payload)][byte type][payload]}, followed by an
+ *   {@code int 0} terminator that the next record overwrites; {@code len} is written last
+ * - {@code len = -1} marks the end of a segment (the next record starts the next segment)
+ * - {@code dir/checkpoint}: mapped {@code [long pos][long ~pos]}, next record to apply
+ *
+ * <p>Semantics:</p>
+ * - on open the last segment is scanned; a torn or corrupt tail record ends the journal
+ * - records between the checkpoint and the tail are replayed on start (at-least-once: a
+ *   crash between the DB commit and the checkpoint store replays that one record)
+ * - retryable SQL errors ({@link Db#isRetryable}: database down, deadlock, timeout) are
+ *   retried with backoff; any other failure moves the record to {@code dir/dead-letter/}
+ *   with a log line and skips it, so one bad record cannot block the journal
+ * - fully applied segments are deleted
+ */
+public final class IngestJournal implements AutoCloseable {
+
+    public static final byte STATS = 1;
+    public static final byte PRESENCE = 2;
+    public static final byte METRICS = 3;
+    public static final byte BAN_REPORT = 4;
+
+    private static final int HEADER = 9;
+    private static final int ROLL = -1;
+    private static final String SEG_PREFIX = "segment-";
+    private static final String SEG_SUFFIX = ".wal";
+    private static final String DEAD_LETTER_DIR = "dead-letter";
+
+    private static final long RETRY_MIN_MS = 500;
+    private static final long RETRY_MAX_MS = 30_000;
+
+    @FunctionalInterface
+    public interface Applier {
+        void apply(byte type, byte[] payload) throws Exception;
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final boolean forceOnAppend;
+
+    // Writer state, guarded by "this".
+    private long writeBase;
+    private MappedByteBuffer writeBuf;
+    private boolean closed;
+
+    /** Global position after the last complete record; the applier never reads past it. */
+    private volatile long writePos;
+
+    private final MappedByteBuffer checkpoint;
+    private volatile long applied;
+    private final AtomicLong deadLettered = new AtomicLong();
+
+    private final Object signal = new Object();
+    private final Object stopSignal = new Object();
+    private volatile boolean running;
+    private Thread applierThread;
+
+    private IngestJournal(Path dir, int segmentBytes, boolean forceOnAppend) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.forceOnAppend = forceOnAppend;
+
+        Files.createDirectories(dir);
+        try (FileChannel ch = FileChannel.open(dir.resolve("checkpoint"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.checkpoint = ch.map(FileChannel.MapMode.READ_WRITE, 0, 16);
+        }
+    }
+
+    public static IngestJournal open(AppConfig.JournalCfg cfg) throws IOException {
+        IngestJournal j = new IngestJournal(Path.of(cfg.dir()), cfg.segmentBytes(), cfg.forceOnAppend());
+        j.recover();
+        return j;
+    }
+
+    /**
+     * Appends one record. Returns once it is in the mapped segment (the page cache), which
+     * survives a process crash; with {@code forceOnAppend} also a power loss.
+     */
+    public void append(byte type, byte[] payload) throws IOException {
+        if (payload == null || payload.length == 0) throw new IllegalArgumentException("empty journal record");
+        if (payload.length > maxRecordBytes()) throw new IllegalArgumentException("record larger than journal segment");
+        int need = HEADER + payload.length;
+
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+
+        synchronized (this) {
+            if (closed) throw new IOException("journal closed");
+
+            int off = (int) (writePos - writeBase);
+            if (off + need + 4 > writeBuf.capacity()) {
+                roll(off);
+                off = 0;
+            }
+
+            writeBuf.putInt(off + 4, (int) crc.getValue());
+            writeBuf.put(off + 8, type);
+            writeBuf.put(off + HEADER, payload);
+            writeBuf.putInt(off + need, 0);
+            writeBuf.putInt(off, payload.length);
+            if (forceOnAppend) writeBuf.force(off, need + 4);
+
+            writePos = writeBase + off + need;
+        }
+
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    /**
+     * Largest payload {@link #append} accepts (one record per segment).
+     */
+    public int maxRecordBytes() {
+        return segmentBytes - HEADER - 4;
+    }
+
+    /**
+     * Records skipped because applying them failed with a non-retryable error.
+     */
+    public long deadLettered() {
+        return deadLettered.get();
+    }
+
+    /**
+     * Bytes appended but not yet applied.
+     */
+    public long lagBytes() {
+        return Math.max(0L, writePos - applied);
+    }
+
+    public synchronized void start(Applier applier) {
+        if (running) return;
+        running = true;
+        applierThread = new Thread(() -> applyLoop(applier), "bb-journal-apply");
+        applierThread.setDaemon(true);
+        applierThread.start();
+    }
+
+    /**
+     * Stops accepting appends and lets the applier finish the record in flight.
+     * Unapplied records stay on disk and are replayed on the next start.
+     */
+    @Override
+    public void close() {
+        Thread t;
+        synchronized (this) {
+            closed = true;
+            running = false;
+            t = applierThread;
+            if (writeBuf != null) writeBuf.force();
+        }
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        synchronized (stopSignal) {
+            stopSignal.notifyAll();
+        }
+        if (t != null) {
+            try { t.join(10_000); } catch (InterruptedException ignored) {}
+        }
+        checkpoint.force();
+    }
+
+    // ---------------- recovery ----------------
+
+    private void recover() throws IOException {
+        List<Long> bases = segmentBases();
+
+        long cp = checkpoint.getLong(0);
+        boolean cpValid = cp >= 0 && checkpoint.getLong(8) == ~cp;
+
+        if (bases.isEmpty()) {
+            long base = cpValid ? cp : 0L;
+            openWriteSegment(base);
+            writePos = base;
+            applied = base;
+            storeCheckpoint(base);
+            return;
+        }
+
+        long first = bases.get(0);
+        if (!cpValid || cp < first) cp = first;
+
+        // Segments before the last one were completed by a roll; only the tail needs a scan.
+        long lastBase = bases.get(bases.size() - 1);
+        openWriteSegment(lastBase);
+        int end = scanEnd(writeBuf);
+        if (end < 0) {
+            long next = lastBase + writeBuf.capacity();
+            openWriteSegment(next);
+            writePos = next;
+        } else {
+            writePos = lastBase + end;
+        }
+
+        if (cp > writePos) cp = writePos;
+        applied = cp;
+        storeCheckpoint(cp);
+
+        for (long b : bases) {
+            if (b != writeBase && b + Files.size(segmentPath(b)) <= cp) deleteSegment(b);
+        }
+
+        long lag = writePos - cp;
+        if (lag > 0) {
+            System.out.println("[BackendBridgeService] Journal: replaying " + lag + " bytes from " + dir.toAbsolutePath());
+        }
+    }
+
+    /**
+     * Returns the offset after the last valid record, or -1 if the segment was rolled.
+     */
+    private static int scanEnd(MappedByteBuffer buf) {
+        int off = 0;
+        int cap = buf.capacity();
+        while (off + 4 <= cap) {
+            int len = buf.getInt(off);
+            if (len == ROLL) return -1;
+            if (len <= 0 || off + HEADER + len + 4 > cap) return off;
+
+            CRC32 crc = new CRC32();
+            crc.update(buf.get(off + 8));
+            crc.update(buf.slice(off + HEADER, len));
+            if ((int) crc.getValue() != buf.getInt(off + 4)) return off;
+
+            off += HEADER + len;
+        }
+        return -1;
+    }
+
+    private List<Long> segmentBases() throws IOException {
+        List<Long> out = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(p -> {
+                String n = p.getFileName().toString();
+                if (!n.startsWith(SEG_PREFIX) || !n.endsWith(SEG_SUFFIX)) return;
+                try {
+                    out.add(Long.parseLong(n.substring(SEG_PREFIX.length(), n.length() - SEG_SUFFIX.length())));
+                } catch (NumberFormatException ignored) {}
+            });
+        }
+        out.sort(null);
+        return out;
+    }
+
+    // ---------------- writer ----------------
+
+    private void roll(int off) throws IOException {
+        long next = writeBase + writeBuf.capacity();
+        MappedByteBuffer old = writeBuf;
+        openWriteSegment(next);
+        if (off + 4 <= old.capacity()) old.putInt(off, ROLL);
+        old.force();
+        writePos = next;
+    }
+
+    private void openWriteSegment(long base) throws IOException {
+        Path p = segmentPath(base);
+        int size = Files.exists(p) ? (int) Files.size(p) : segmentBytes;
+        try (FileChannel ch = FileChannel.open(p,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            writeBuf = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        writeBase = base;
+    }
+
+    private Path segmentPath(long base) {
+        return dir.resolve(SEG_PREFIX + String.format("%020d", base) + SEG_SUFFIX);
+    }
+
+    private void deleteSegment(long base) {
+        try {
+            Files.deleteIfExists(segmentPath(base));
+        } catch (IOException e) {
+            // Still mapped on some platforms; removed on a later start.
+        }
+    }
+
+    // ---------------- applier ----------------
+
+    private void applyLoop(Applier applier) {
+        long readBase = -1;
+        MappedByteBuffer readBuf = null;
+        long retryMs = RETRY_MIN_MS;
+
+        try {
+            while (running) {
+                long pos = applied;
+                if (pos >= writePos) {
+                    synchronized (signal) {
+                        if (running && applied >= writePos) signal.wait(1_000);
+                    }
+                    continue;
+                }
+
+                if (readBuf == null || pos < readBase || pos >= readBase + readBuf.capacity()) {
+                    readBase = segmentBaseOf(pos);
+                    readBuf = mapReadOnly(readBase);
+                }
+
+                int off = (int) (pos - readBase);
+                int len = (off + 4 <= readBuf.capacity()) ? readBuf.getInt(off) : ROLL;
+                if (len == ROLL) {
+                    long next = readBase + readBuf.capacity();
+                    long done = readBase;
+                    readBuf = null;
+                    advance(next);
+                    deleteSegment(done);
+                    continue;
+                }
+
+                byte type = readBuf.get(off + 8);
+                byte[] payload = new byte[len];
+                readBuf.get(off + HEADER, payload);
+
+                try {
+                    applier.apply(type, payload);
+                    retryMs = RETRY_MIN_MS;
+                } catch (Exception e) {
+                    if (Db.isRetryable(e)) {
+                        System.out.println("[BackendBridgeService] Journal apply failed, retrying in " + retryMs + "ms: "
+                                + e.getClass().getSimpleName() + ": " + e.getMessage());
+                        sleepUnlessStopped(retryMs);
+                        retryMs = Math.min(RETRY_MAX_MS, retryMs * 2);
+                        continue;
+                    }
+                    deadLetter(pos, type, payload, e);
+                    retryMs = RETRY_MIN_MS;
+                }
+
+                advance(pos + HEADER + len);
+            }
+        } catch (InterruptedException ignored) {
+            // stopping
+        } catch (IOException e) {
+            System.out.println("[BackendBridgeService] Journal applier stopped: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Keeps a record that cannot be applied as {@code dead-letter/<pos>-<type>.rec} (the raw
+     * payload) for inspection or a manual replay.
+     */
+    private void deadLetter(long pos, byte type, byte[] payload, Exception cause) {
+        deadLettered.incrementAndGet();
+        Path file = dir.resolve(DEAD_LETTER_DIR).resolve(String.format("%020d", pos) + "-" + type + ".rec");
+        String kept;
+        try {
+            Files.createDirectories(file.getParent());
+            Files.write(file, payload);
+            kept = file.toAbsolutePath().toString();
+        } catch (IOException e) {
+            kept = "not kept: " + e.getMessage();
+        }
+        System.out.println("[BackendBridgeService] Journal record dead-lettered (type " + type + " at " + pos + ", " + kept + "): "
+                + cause.getClass().getSimpleName() + ": " + cause.getMessage());
+    }
+
+    /**
+     * Segments are contiguous, so the containing segment is the last base at or below pos.
+     */
+    private long segmentBaseOf(long pos) throws IOException {
+        long best = -1;
+        for (long b : segmentBases()) {
+            if (b <= pos) best = b;
+        }
+        if (best < 0) throw new IOException("journal segment missing for position " + pos);
+        return best;
+    }
+
+    private MappedByteBuffer mapReadOnly(long base) throws IOException {
+        try (FileChannel ch = FileChannel.open(segmentPath(base), StandardOpenOption.READ)) {
+            return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+    }
+
+    private void advance(long pos) {
+        applied = pos;
+        storeCheckpoint(pos);
+    }
+
+    private void storeCheckpoint(long pos) {
+        checkpoint.putLong(0, pos);
+        checkpoint.putLong(8, ~pos);
+    }
+
+    private void sleepUnlessStopped(long ms) throws InterruptedException {
+        synchronized (stopSignal) {
+            if (running) stopSignal.wait(ms);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.backendbridge;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.backendbridge.repo.BansRepository;
+import org.backendbridge.repo.MetricsRepository;
+import org.backendbridge.repo.PresenceRepository;
+import org.backendbridge.repo.StatsRepository;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Applies journaled ingest records to the repositories (see {@link IngestJournal}).
+ *
+ * <p>Payloads are the request bodies exactly as validated by the HTTP handlers;
+ * presence records carry the header/query server key in front ({@link #presenceRecord}).
+ * Stats go straight to {@link StatsRepository}, not through the write-behind aggregator,
+ * so the checkpoint only moves once the deltas are in MySQL.</p>
+ */
+public final class JournalApplier implements IngestJournal.Applier {
+
+    private final StatsRepository statsRepo;
+    private final PresenceRepository presenceRepo;
+    private final MetricsRepository metricsRepo;
+    private final BansRepository bansRepo;
+
+    public JournalApplier(StatsRepository statsRepo, PresenceRepository presenceRepo,
+                          MetricsRepository metricsRepo, BansRepository bansRepo) {
+        this.statsRepo = statsRepo;
+        this.presenceRepo = presenceRepo;
+        this.metricsRepo = metricsRepo;
+        this.bansRepo = bansRepo;
+    }
+
+    @Override
+    public void apply(byte type, byte[] payload) throws Exception {
+        switch (type) {
+            case IngestJournal.STATS -> applyStats(payload);
+            case IngestJournal.PRESENCE -> applyPresence(payload);
+            case IngestJournal.METRICS -> {
+                JsonNode root = JsonUtil.OM.readTree(payload);
+                metricsRepo.ingest(root.path("serverKey").asText(), root);
+            }
+            case IngestJournal.BAN_REPORT -> {
+                JsonNode root = JsonUtil.OM.readTree(payload);
+                bansRepo.reportServerBan(root.path("serverKey").asText(), root.get("ban"));
+            }
+            default -> throw new IllegalArgumentException("Unknown journal record type: " + type);
+        }
+    }
+
+    private void applyStats(byte[] payload) throws Exception {
+        try (StatsRepository.Batch batch = statsRepo.openBatch()) {
+            JsonUtil.streamArrayField(new ByteArrayInputStream(payload), "players", (p, fields) -> batch.add(p));
+            batch.commit();
+        }
+    }
+
+    /**
+     * Presence payload: {@code [u16 keyLen][serverKey utf8][body]}; keyLen 0 means "from the body".
+     */
+    static byte[] presenceRecord(String serverKey, byte[] body) {
+        byte[] key = (serverKey == null || serverKey.isBlank())
+                ? new byte[0]
+                : serverKey.trim().getBytes(StandardCharsets.UTF_8);
+        if (key.length > 0xFFFF) throw new IllegalArgumentException("serverKey too long");
+
+        return ByteBuffer.allocate(2 + key.length + body.length)
+                .putShort((short) key.length)
+                .put(key)
+                .put(body)
+                .array();
+    }
+
+    private void applyPresence(byte[] payload) throws Exception {
+        int keyLen = ((payload[0] & 0xFF) << 8) | (payload[1] & 0xFF);
+        String serverKey = (keyLen == 0) ? null : new String(payload, 2, keyLen, StandardCharsets.UTF_8);
+        int off = 2 + keyLen;
+
+        try (PresenceRepository.Batch batch = presenceRepo.openBatch(serverKey)) {
+            JsonUtil.ArrayStream body = JsonUtil.streamArrayField(
+                    new ByteArrayInputStream(payload, off, payload.length - off), "players", batch::add);
+            batch.commit(body.fields());
+        }
+    }
+}
@@ -1,9 +1,66 @@
 package org.backendbridge;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.InputStream;
 
 public final class JsonUtil {
     private JsonUtil() {}
 
     public static final ObjectMapper OM = new ObjectMapper();
+
+    @FunctionalInterface
+    public interface ElementHandler {
+        /**
+         * @param element       one array element (small tree, discarded after the call)
+         * @param fieldsSoFar   root fields parsed before the array (later fields are not known yet)
+         */
+        void accept(JsonNode element, ObjectNode fieldsSoFar) throws Exception;
+    }
+
+    /**
+     * @param arrayFound true if the root object contained the array field
+     * @param fields     all other root fields
+     */
+    public record ArrayStream(boolean arrayFound, ObjectNode fields) {}
+
+    /**
+     * Token-streams {@code in} and hands each element of the root field {@code arrayField}
+     * to {@code handler} as soon as it is parsed, so memory stays O(1) in the array length.
+     * Other root fields are materialized. A root that is not an object yields {@code arrayFound=false}.
+     */
+    public static ArrayStream streamArrayField(InputStream in, String arrayField, ElementHandler handler) throws Exception {
+        ObjectNode fields = OM.createObjectNode();
+
+        try (JsonParser p = OM.getFactory().createParser(in)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) return new ArrayStream(false, fields);
+
+            boolean found = false;
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.currentName();
+                JsonToken t = p.nextToken();
+                if (arrayField.equals(name) && t == JsonToken.START_ARRAY) {
+                    streamElements(p, handler, fields);
+                    found = true;
+                } else {
+                    fields.set(name, p.readValueAsTree());
+                }
+            }
+            return new ArrayStream(found, fields);
+        }
+    }
+
+    private static void streamElements(JsonParser p, ElementHandler handler, ObjectNode fields) throws Exception {
+        JsonToken t;
+        while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (t == null) throw new JsonParseException(p, "Unexpected end-of-input in array");
+            JsonNode el = p.readValueAsTree();
+            handler.accept(el, fields);
+        }
+    }
 }
@@ -0,0 +1,527 @@
+package org.backendbridge;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fan-out hub for server-sent event streams.
+ *
+ * <p>The stream handler only sends the response headers and hands the exchange over,
+ * so HTTP worker threads are never parked on an open stream.</p>
+ *
+ * <p>Two kinds of connections share the loops:</p>
+ * <ul>
+ *   <li>live: Admin UI updates. One dispatcher subscribes to {@link LiveBus} once and
+ *       encodes every event to a frame exactly once; loops queue the shared frame bytes
+ *       on all live connections</li>
+ *   <li>cursor: a {@link CursorFeed} (e.g. ban changes). Each connection keeps its own
+ *       cursor, replays from it on connect and follows the feed after {@link #notifyFeed};
+ *       event payloads are shared bytes, only the small {@code id:} line is per connection.
+ *       A cursor the feed can no longer serve gets a {@code snapshot-required} event and
+ *       the connection is closed</li>
+ * </ul>
+ *
+ * <p>Loops send a keep-alive every 15 s (a comment for live, a {@code heartbeat} event with
+ * the cursor for cursor streams, which also keeps NAT mappings open) and drop a connection
+ * on the first failed write (client gone).</p>
+ *
+ * <p>The JDK HttpServer does not expose the socket channel, so writes go through the
+ * blocking exchange response stream. Loops never write themselves: each connection has a
+ * bounded output buffer drained by a writer thread, so a slow client only stalls its own
+ * writer. A client that stays slow is disconnected:</p>
+ * - a live connection whose buffer exceeds {@link #MAX_BUFFER_BYTES} (its frames are counted
+ *   in {@link #droppedFrames()}); the Admin UI reconnects and reloads
+ * - any connection whose write is blocked longer than {@link #WRITE_DEADLINE_MS}
+ * - cursor connections are only pumped while their buffer is below {@link #PUMP_LIMIT_BYTES},
+ *   so they fall behind on their cursor instead of buffering, and resume from it on reconnect
+ */
+public final class SseHub {
+
+    private static final long KEEP_ALIVE_MS = 15_000;
+    private static final long WRITE_DEADLINE_MS = 10_000;
+    private static final long DEADLINE_CHECK_MS = 1_000;
+    private static final int MAX_BUFFER_BYTES = 1 << 20;
+    private static final int PUMP_LIMIT_BYTES = 256 << 10;
+    private static final int LOOP_QUEUE = 1_000;
+    private static final byte[] KEEP_ALIVE = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HELLO = frame("hello", "{\"ok\":true}");
+    private static final byte[] EVENT_END = "\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final int FEED_BATCH = 256;
+
+    /**
+     * Cursor-addressed event source for {@link #register(HttpExchange, CursorFeed, long)}.
+     */
+    public interface CursorFeed {
+        /**
+         * Events with id greater than {@code cursor}, at most {@code max}, in id order;
+         * null if the feed can no longer resume from {@code cursor}. Must not block.
+         */
+        Page read(long cursor, int max);
+    }
+
+    /**
+     * @param data one-line JSON (UTF-8); the same array may be written to many connections
+     */
+    public record Event(long id, String name, byte[] data) {}
+
+    public record Page(List<Event> events, boolean hasMore) {}
+
+    private final Loop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final ExecutorService writers;
+    private final AtomicLong droppedFrames = new AtomicLong();
+
+    private volatile boolean running;
+    private LiveBus.Subscriber sub;
+    private Thread dispatcher;
+
+    public SseHub(int loopThreads) {
+        int n = Math.max(1, loopThreads);
+        this.loops = new Loop[n];
+        for (int i = 0; i < n; i++) loops[i] = new Loop(i);
+
+        AtomicInteger writerIdx = new AtomicInteger();
+        this.writers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "bb-sse-write-" + writerIdx.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+
+        for (Loop l : loops) l.thread.start();
+
+        sub = LiveBus.subscribe();
+        dispatcher = new Thread(this::dispatch, "bb-sse-dispatch");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+
+        if (sub != null) LiveBus.unsubscribe(sub.id());
+        if (dispatcher != null) dispatcher.interrupt();
+        for (Loop l : loops) l.thread.interrupt();
+        writers.shutdown();
+    }
+
+    /**
+     * Takes ownership of an exchange whose 200 headers were already sent and subscribes it
+     * to Admin UI live events. The hub closes it when the client disconnects or the hub stops.
+     */
+    public void register(HttpExchange ex) {
+        register(ex, null, 0L);
+    }
+
+    /**
+     * Like {@link #register(HttpExchange)}, but the connection streams {@code feed} from
+     * {@code cursor} on.
+     */
+    public void register(HttpExchange ex, CursorFeed feed, long cursor) {
+        if (!running) {
+            closeQuietly(ex);
+            return;
+        }
+        Loop l = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+        l.pending.add(new Conn(l, ex, feed, cursor));
+        l.wake();
+    }
+
+    /**
+     * New events are available in {@code feed}; cursor connections catch up on their loop.
+     */
+    public void notifyFeed(CursorFeed feed) {
+        if (!running) return;
+        for (Loop l : loops) {
+            l.dirtyFeeds.add(feed);
+            l.wake();
+        }
+    }
+
+    public int connectionCount() {
+        int n = 0;
+        for (Loop l : loops) n += l.size;
+        return n;
+    }
+
+    /**
+     * Live frames not delivered: loop queue full, or dropped with a slow connection.
+     */
+    public long droppedFrames() {
+        return droppedFrames.get();
+    }
+
+    static byte[] frame(String event, String jsonOneLine) {
+        String s = "event: " + event + "\n" +
+                "data: " + (jsonOneLine == null ? "{}" : jsonOneLine) + "\n\n";
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void dispatch() {
+        while (running) {
+            try {
+                LiveBus.SseEvent ev = sub.poll(1_000);
+                if (ev == null) continue;
+
+                byte[] f = frame(ev.event(), ev.dataJson());
+                for (Loop l : loops) l.offer(f);
+            } catch (InterruptedException ie) {
+                return;
+            }
+        }
+    }
+
+    private static void closeQuietly(HttpExchange ex) {
+        try { ex.getResponseBody().close(); } catch (Exception ignored) {}
+        try { ex.close(); } catch (Exception ignored) {}
+    }
+
+    private final class Loop implements Runnable {
+        private final Thread thread;
+        private final ConcurrentLinkedQueue<Conn> pending = new ConcurrentLinkedQueue<>();
+        private final Set<CursorFeed> dirtyFeeds = ConcurrentHashMap.newKeySet();
+        /** Cursor connections whose buffer drained below the pump limit. */
+        private final ConcurrentLinkedQueue<Conn> resumable = new ConcurrentLinkedQueue<>();
+        private final List<Conn> conns = new ArrayList<>();
+        private volatile int size;
+
+        // Inbox, guarded by "this". A wake-up is a flag, so it can never be lost to a full queue.
+        private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+        private boolean woken;
+
+        private Loop(int idx) {
+            this.thread = new Thread(this, "bb-sse-loop-" + idx);
+            this.thread.setDaemon(true);
+        }
+
+        private synchronized void offer(byte[] f) {
+            if (frames.size() >= LOOP_QUEUE) {
+                droppedFrames.incrementAndGet();
+                return;
+            }
+            frames.add(f);
+            notifyAll();
+        }
+
+        private synchronized void wake() {
+            woken = true;
+            notifyAll();
+        }
+
+        private synchronized List<byte[]> await(long ms) throws InterruptedException {
+            if (frames.isEmpty() && !woken) wait(ms);
+            woken = false;
+            if (frames.isEmpty()) return List.of();
+            List<byte[]> out = new ArrayList<>(frames);
+            frames.clear();
+            return out;
+        }
+
+        @Override
+        public void run() {
+            long nextKeepAlive = System.currentTimeMillis() + KEEP_ALIVE_MS;
+            long nextDeadlineCheck = System.currentTimeMillis() + DEADLINE_CHECK_MS;
+            try {
+                while (running) {
+                    long wait = Math.max(1, Math.min(nextKeepAlive, nextDeadlineCheck) - System.currentTimeMillis());
+                    List<byte[]> live = await(wait);
+
+                    acceptPending();
+                    pumpDirtyFeeds();
+                    pumpResumable();
+
+                    for (byte[] f : live) writeLive(f);
+
+                    long now = System.currentTimeMillis();
+                    if (now >= nextDeadlineCheck) {
+                        dropStalled(now);
+                        nextDeadlineCheck = now + DEADLINE_CHECK_MS;
+                    }
+
+                    // Fixed cadence: cursor streams need heartbeats even while live events flow.
+                    if (now >= nextKeepAlive) {
+                        writeKeepAlive();
+                        nextKeepAlive = System.currentTimeMillis() + KEEP_ALIVE_MS;
+                    }
+                }
+            } catch (InterruptedException ignored) {
+                // stopping
+            } finally {
+                for (Conn c : conns) c.close();
+                conns.clear();
+                Conn c;
+                while ((c = pending.poll()) != null) c.close();
+                size = 0;
+            }
+        }
+
+        private void acceptPending() {
+            Conn c;
+            while ((c = pending.poll()) != null) {
+                if (c.enqueue(HELLO) && (c.feed == null || pump(c))) conns.add(c);
+            }
+            size = conns.size();
+        }
+
+        private void pumpDirtyFeeds() {
+            if (dirtyFeeds.isEmpty()) return;
+
+            Iterator<CursorFeed> feeds = dirtyFeeds.iterator();
+            while (feeds.hasNext()) {
+                CursorFeed feed = feeds.next();
+                feeds.remove();
+
+                Iterator<Conn> it = conns.iterator();
+                while (it.hasNext()) {
+                    Conn c = it.next();
+                    if (c.feed == feed && !pump(c)) it.remove();
+                }
+            }
+            size = conns.size();
+        }
+
+        private void pumpResumable() {
+            Conn c;
+            while ((c = resumable.poll()) != null) {
+                if (!c.isClosed() && !pump(c)) conns.remove(c);
+            }
+            size = conns.size();
+        }
+
+        /**
+         * Queues what the feed has after the connection's cursor, until the buffer reaches
+         * the pump limit (the writer hands the connection back once it drained). Returns
+         * false if the connection was closed (client gone or cursor too old).
+         */
+        private boolean pump(Conn c) {
+            while (true) {
+                if (c.isClosed()) return false;
+                Page page = c.feed.read(c.cursor, FEED_BATCH);
+                if (page == null) {
+                    c.enqueue(frame("snapshot-required", "{\"cursor\":" + c.cursor + "}"));
+                    c.closeWhenDrained();
+                    return false;
+                }
+                for (Event e : page.events()) {
+                    if (c.buffered() >= PUMP_LIMIT_BYTES) {
+                        c.resumeWhenDrained();
+                        return true;
+                    }
+                    byte[] head = ("id: " + e.id() + "\nevent: " + e.name() + "\ndata: ").getBytes(StandardCharsets.UTF_8);
+                    if (!c.enqueue(head, e.data(), EVENT_END)) return false;
+                    c.cursor = e.id();
+                }
+                if (!page.hasMore()) return true;
+            }
+        }
+
+        private void writeLive(byte[] f) {
+            Iterator<Conn> it = conns.iterator();
+            while (it.hasNext()) {
+                Conn c = it.next();
+                if (c.feed == null && !c.offerLive(f)) it.remove();
+            }
+            size = conns.size();
+        }
+
+        private void writeKeepAlive() {
+            Iterator<Conn> it = conns.iterator();
+            while (it.hasNext()) {
+                Conn c = it.next();
+                boolean ok = (c.feed == null)
+                        ? c.offerLive(KEEP_ALIVE)
+                        : c.enqueue(frame("heartbeat", "{\"cursor\":" + c.cursor + "}"));
+                if (!ok) it.remove();
+            }
+            size = conns.size();
+        }
+
+        private void dropStalled(long now) {
+            Iterator<Conn> it = conns.iterator();
+            while (it.hasNext()) {
+                Conn c = it.next();
+                if (c.isClosed()) {
+                    it.remove();
+                } else if (c.stalledSince(now) > WRITE_DEADLINE_MS) {
+                    it.remove();
+                    c.abort();
+                }
+            }
+            size = conns.size();
+        }
+    }
+
+    /**
+     * One stream. The loop queues frames, a writer thread drains them to the exchange; the
+     * buffer and flags are guarded by the connection's monitor.
+     */
+    private final class Conn {
+        private final Loop loop;
+        private final HttpExchange ex;
+        private final OutputStream os;
+        private final CursorFeed feed;
+        /** Loop thread only. */
+        private long cursor;
+
+        private final ArrayDeque<byte[]> out = new ArrayDeque<>();
+        private int outBytes;
+        private boolean writing;
+        private boolean resumeWhenDrained;
+        private boolean closeWhenDrained;
+        private volatile boolean closed;
+        /** Start of the write in progress, 0 while idle. */
+        private volatile long writeStartedMs;
+
+        private Conn(Loop loop, HttpExchange ex, CursorFeed feed, long cursor) {
+            this.loop = loop;
+            this.ex = ex;
+            this.os = ex.getResponseBody();
+            this.feed = feed;
+            this.cursor = cursor;
+        }
+
+        /** Queues a live frame; a connection whose buffer is full is closed. */
+        private boolean offerLive(byte[] f) {
+            synchronized (this) {
+                if (closed) return false;
+                if (outBytes + f.length <= MAX_BUFFER_BYTES) return enqueue(f);
+                droppedFrames.incrementAndGet();
+            }
+            abort();
+            return false;
+        }
+
+        /** Queues the parts as one write. Returns false when the connection is closed. */
+        private synchronized boolean enqueue(byte[]... parts) {
+            if (closed) return false;
+            for (byte[] p : parts) {
+                out.add(p);
+                outBytes += p.length;
+            }
+            if (!writing) {
+                writing = true;
+                try {
+                    writers.execute(this::drain);
+                } catch (RejectedExecutionException stopping) {
+                    writing = false;
+                    closed = true;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private synchronized int buffered() {
+            return outBytes;
+        }
+
+        private synchronized void resumeWhenDrained() {
+            resumeWhenDrained = true;
+        }
+
+        private void closeWhenDrained() {
+            synchronized (this) {
+                closeWhenDrained = true;
+                if (writing) return;
+            }
+            close();
+        }
+
+        private boolean isClosed() {
+            return closed;
+        }
+
+        private long stalledSince(long now) {
+            long started = writeStartedMs;
+            return (started == 0) ? 0 : now - started;
+        }
+
+        /** Writer thread: writes queued frames until the buffer is empty. */
+        private void drain() {
+            while (true) {
+                List<byte[]> batch;
+                boolean resume = false;
+                synchronized (this) {
+                    if (closed || out.isEmpty()) {
+                        writing = false;
+                        if (!closeWhenDrained) {
+                            resume = resumeWhenDrained && !closed;
+                            resumeWhenDrained = false;
+                        }
+                        batch = null;
+                    } else {
+                        batch = new ArrayList<>(out);
+                        out.clear();
+                        outBytes = 0;
+                    }
+                }
+                if (batch == null) {
+                    if (closeWhenDrained) {
+                        close();
+                    } else if (resume) {
+                        loop.resumable.add(this);
+                        loop.wake();
+                    }
+                    return;
+                }
+
+                writeStartedMs = System.currentTimeMillis();
+                try {
+                    for (byte[] b : batch) os.write(b);
+                    os.flush();
+                } catch (IOException clientDisconnected) {
+                    close();
+                } finally {
+                    writeStartedMs = 0;
+                }
+            }
+        }
+
+        /**
+         * Drops a slow client. A writer blocked on the exchange stream cannot be interrupted,
+         * so the close runs on a writer thread instead of the loop.
+         */
+        private void abort() {
+            synchronized (this) {
+                if (closed) return;
+                closed = true;
+                out.clear();
+                outBytes = 0;
+            }
+            try {
+                writers.execute(() -> closeQuietly(ex));
+            } catch (RejectedExecutionException stopping) {
+                // hub stopped; the exchange goes with the server
+            }
+        }
+
+        private void close() {
+            synchronized (this) {
+                closed = true;
+                out.clear();
+                outBytes = 0;
+            }
+            closeQuietly(ex);
+        }
+    }
+}
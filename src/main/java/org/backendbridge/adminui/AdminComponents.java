@@ -169,6 +169,8 @@ public final class AdminComponents {
         String tReasonPh = (lang == Lang.DE) ? "Grund..." : "Reason...";
         String tDuration = (lang == Lang.DE) ? "Dauer Stunden (optional)" : "Duration hours (optional)";
         String tExample = (lang == Lang.DE) ? "z.B. 24" : "e.g. 24";
+        String tRanges = (lang == Lang.DE) ? "IP-Bereiche (optional, CIDR)" : "IP ranges (optional, CIDR)";
+        String tRangesPh = "10.0.0.0/24, 2001:db8::/48";
         String tBan = "Ban";
         String tUnban = "Unban";
 
@@ -180,11 +182,14 @@ public final class AdminComponents {
                   <input class="inp" type="text" name="reason" placeholder="%s" required>
                   <div class="label">%s</div>
                   <input class="inp" type="number" name="hours" min="1" max="8760" placeholder="%s">
+                  <div class="label">%s</div>
+                  <input class="inp" type="text" name="cidrs" placeholder="%s">
                   <div style="display:flex; justify-content:flex-end;">
                     <button class="btn danger" type="submit">%s</button>
                   </div>
                 </form>
-                """.formatted(x, esc(tReason), escAttr(tReasonPh), esc(tDuration), escAttr(tExample), esc(tBan));
+                """.formatted(x, esc(tReason), escAttr(tReasonPh), esc(tDuration), escAttr(tExample),
+                        esc(tRanges), escAttr(tRangesPh), esc(tBan));
         }
 
         return """
@@ -104,7 +104,9 @@ public final class AdminPages {
             String banCreatedAtIso,
             String banExpiresAtIso,
             String banUpdatedAtIso,
-            List<AdminRepository.BanEvent> events
+            List<AdminRepository.BanEvent> events,
+            List<AdminRepository.PlayerIdentifier> identifiers,
+            List<AdminRepository.LinkedAccount> linked
     ) {
         return AdminPagesGame.playerDetail(
                 serverName,
@@ -123,7 +125,9 @@ public final class AdminPages {
                 banCreatedAtIso,
                 banExpiresAtIso,
                 banUpdatedAtIso,
-                events
+                events,
+                identifiers,
+                linked
         );
     }
 
@@ -541,7 +541,9 @@ final class AdminPagesGame {
             String banCreatedAtIso,
             String banExpiresAtIso,
             String banUpdatedAtIso,
-            List<AdminRepository.BanEvent> events
+            List<AdminRepository.BanEvent> events,
+            List<AdminRepository.PlayerIdentifier> identifiers,
+            List<AdminRepository.LinkedAccount> linked
     ) {
         StringBuilder html = new StringBuilder(170_000);
         html.append(pageStart(((lang == Lang.DE) ? "Spieler" : "Player") + " • " + esc(name)));
@@ -671,6 +673,63 @@ final class AdminPagesGame {
             html.append(tableEnd());
         }
 
+        if (linked != null && !linked.isEmpty()) {
+            StringBuilder rows = new StringBuilder(16_000);
+            for (AdminRepository.LinkedAccount l : linked) {
+                StringBuilder via = new StringBuilder();
+                for (var id : l.shared()) {
+                    if (via.length() > 0) via.append(", ");
+                    via.append(id.type().name()).append(' ').append(id.value());
+                }
+                String shared = l.shared().isEmpty()
+                        ? ((lang == Lang.DE) ? "indirekt" : "indirect")
+                        : via.toString();
+                String status = l.banned()
+                        ? "<span class='pill pill-warn'>" + esc((lang == Lang.DE) ? "gebannt" : "banned") + "</span>"
+                        : "";
+
+                rows.append("<tr>")
+                        .append("<td class='mono'><a class='mono' href='/admin/player?xuid=").append(escAttr(urlEncode(l.xuid()))).append("'>")
+                        .append(esc(l.xuid())).append("</a></td>")
+                        .append("<td>").append(esc(l.name())).append("</td>")
+                        .append("<td class='mono'>").append(esc(shared)).append("</td>")
+                        .append("<td>").append(status).append("</td>")
+                        .append("</tr>");
+            }
+
+            html.append(tableStart((lang == Lang.DE) ? "Verknüpfte Accounts" : "Linked accounts", null,
+                    new Th("XUID", "text"),
+                    new Th("Name", "text"),
+                    new Th((lang == Lang.DE) ? "Gemeinsam" : "Shared", "text"),
+                    new Th("Status", "text")
+            ));
+            html.append(rows);
+            html.append(tableEnd());
+        }
+
+        if (identifiers != null && !identifiers.isEmpty()) {
+            StringBuilder rows = new StringBuilder(12_000);
+            for (AdminRepository.PlayerIdentifier id : identifiers) {
+                String first = id.firstSeenIso() == null ? "" : id.firstSeenIso();
+                String last = id.lastSeenIso() == null ? "" : id.lastSeenIso();
+                rows.append("<tr>")
+                        .append("<td class='mono'>").append(esc(id.type())).append("</td>")
+                        .append("<td class='mono'>").append(esc(id.value())).append("</td>")
+                        .append("<td class='mono' data-iso='").append(escAttr(first)).append("' data-sort='").append(escAttr(first)).append("'></td>")
+                        .append("<td class='mono' data-iso='").append(escAttr(last)).append("' data-sort='").append(escAttr(last)).append("'></td>")
+                        .append("</tr>");
+            }
+
+            html.append(tableStart((lang == Lang.DE) ? "IP/HWID Verlauf" : "IP/HWID history", null,
+                    new Th("Type", "text"),
+                    new Th((lang == Lang.DE) ? "Wert" : "Value", "text"),
+                    new Th((lang == Lang.DE) ? "Zuerst gesehen" : "First Seen", "date"),
+                    new Th((lang == Lang.DE) ? "Zuletzt gesehen" : "Last Seen", "date")
+            ));
+            html.append(rows);
+            html.append(tableEnd());
+        }
+
         html.append(appShellEnd());
         html.append(pageEndWithAppScript());
         return html.toString();
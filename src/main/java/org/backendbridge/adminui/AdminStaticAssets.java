@@ -0,0 +1,66 @@
+package org.backendbridge.adminui;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Static Admin UI assets (app CSS/JS) served from {@code /admin/static/}.
+ *
+ * <p>Loaded once from the classpath ({@code adminui/app.css}, {@code adminui/app.js}):</p>
+ * - URL carries a content hash (app.&lt;hash&gt;.css), so responses can be cached as immutable
+ * - gzip variant is precomputed, nothing is compressed per request
+ * - ETag is the content hash (suffixed "-gz" for the gzip variant)
+ */
+public final class AdminStaticAssets {
+
+    public static final String PREFIX = "/admin/static/";
+
+    private static final Asset CSS = load("adminui/app.css", "css", "text/css; charset=utf-8");
+    private static final Asset JS = load("adminui/app.js", "js", "text/javascript; charset=utf-8");
+    private static final Map<String, Asset> BY_PATH = Map.of(CSS.path(), CSS, JS.path(), JS);
+
+    private AdminStaticAssets() {}
+
+    public static Asset css() { return CSS; }
+
+    public static Asset js() { return JS; }
+
+    /** Returns the asset for a request path, or null if unknown (e.g. an outdated hash). */
+    public static Asset byPath(String path) {
+        return path == null ? null : BY_PATH.get(path);
+    }
+
+    private static Asset load(String resource, String ext, String contentType) {
+        try (InputStream is = AdminStaticAssets.class.getClassLoader().getResourceAsStream(resource)) {
+            if (is == null) throw new IllegalStateException("Missing resource: " + resource);
+            byte[] raw = is.readAllBytes();
+
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(raw);
+            String hash = HexFormat.of().formatHex(digest, 0, 6);
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(raw.length / 3);
+            try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+                gz.write(raw);
+            }
+
+            return new Asset(
+                    PREFIX + "app." + hash + "." + ext,
+                    contentType,
+                    raw,
+                    bos.toByteArray(),
+                    "\"" + hash + "\"",
+                    "\"" + hash + "-gz\""
+            );
+        } catch (IllegalStateException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to load asset: " + resource, e);
+        }
+    }
+
+    public record Asset(String path, String contentType, byte[] raw, byte[] gzip, String etag, String gzipEtag) {}
+}
@@ -28,12 +28,20 @@ public final class AdminRepository {
     private final String serverName;
     private final UsersRepository usersRepo;
     private final MetricsRepository metricsRepo;
+    private final BansRepository bansRepo;
+    private final LinkedAccountIndex links;
 
-    public AdminRepository(Db db, String serverName, UsersRepository usersRepo, MetricsRepository metricsRepo) {
+    /** Linked accounts shown per player (page and API). */
+    private static final int LINKED_MAX = 100;
+
+    public AdminRepository(Db db, String serverName, UsersRepository usersRepo, MetricsRepository metricsRepo,
+                           BansRepository bansRepo, LinkedAccountIndex links) {
         this.db = db;
         this.serverName = (serverName == null || serverName.isBlank()) ? "MyServer" : serverName;
         this.usersRepo = usersRepo;
         this.metricsRepo = metricsRepo;
+        this.bansRepo = bansRepo;
+        this.links = links;
     }
 
     // ---------------- Renderers ----------------
@@ -68,8 +76,9 @@ public final class AdminRepository {
     public String renderPlayersHtml(Lang lang) throws Exception {
         long totalPlayers = count("SELECT COUNT(*) FROM players");
         long playersWithStats = count("SELECT COUNT(*) FROM players p JOIN player_stats s ON s.xuid = p.xuid");
-        long totalBans = count("SELECT COUNT(*) FROM bans");
-        long activeBans = count("SELECT COUNT(*) FROM bans b WHERE b.revoked_at IS NULL AND (b.expires_at IS NULL OR b.expires_at > CURRENT_TIMESTAMP(3))");
+        BansRepository.BanCounts banCounts = bansRepo.counts();
+        long totalBans = banCounts.total();
+        long activeBans = banCounts.active();
 
         String sql =
                 "SELECT p.xuid, p.last_name, p.last_seen_at, p.online, p.online_updated_at, " +
@@ -115,6 +124,8 @@ public final class AdminRepository {
         BanState ban = loadActiveBan(xuid);
         boolean active = ban != null;
         List<BanEvent> events = active ? loadBanEvents(ban.banId) : List.of();
+        List<PlayerIdentifier> identifiers = loadIdentifiers(xuid);
+        List<LinkedAccount> linked = loadLinkedAccounts(xuid);
 
         return AdminPages.playerDetail(
                 serverName,
@@ -133,15 +144,48 @@ public final class AdminRepository {
                 active ? ban.createdAtIso : "",
                 active ? ban.expiresAtIso : null,
                 active ? ban.updatedAtIso : "",
-                events
+                events,
+                identifiers,
+                linked
         );
     }
 
+    /**
+     * Linked accounts of a player (shared IP/HWID, directly or through other accounts) as JSON.
+     */
+    public String linkedAccountsJson(String xuid) throws Exception {
+        List<LinkedAccount> linked = loadLinkedAccounts(xuid);
+
+        var arr = new java.util.ArrayList<Map<String, Object>>(linked.size());
+        for (LinkedAccount l : linked) {
+            var shared = new java.util.ArrayList<Map<String, Object>>(l.shared().size());
+            for (LinkedAccountIndex.Identifier id : l.shared()) {
+                Map<String, Object> m = new LinkedHashMap<>();
+                m.put("type", id.type().name());
+                m.put("value", id.value());
+                shared.add(m);
+            }
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("xuid", l.xuid());
+            m.put("name", l.name());
+            m.put("banned", l.banned());
+            m.put("shared", shared);
+            arr.add(m);
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("xuid", xuid);
+        out.put("groupSize", links.groupSize(xuid));
+        out.put("linked", arr);
+        return JsonUtil.OM.writeValueAsString(out);
+    }
+
     public String renderBansHtml(Lang lang) throws Exception {
         long totalPlayers = count("SELECT COUNT(*) FROM players");
-        long totalBans = count("SELECT COUNT(*) FROM bans");
-        long activeBans = count("SELECT COUNT(*) FROM bans b WHERE b.revoked_at IS NULL AND (b.expires_at IS NULL OR b.expires_at > CURRENT_TIMESTAMP(3))");
-        long revokedBans = count("SELECT COUNT(*) FROM bans b WHERE b.revoked_at IS NOT NULL");
+        BansRepository.BanCounts banCounts = bansRepo.counts();
+        long totalBans = banCounts.total();
+        long activeBans = banCounts.active();
+        long revokedBans = banCounts.revoked();
 
         String sql = "SELECT ban_id, xuid, reason, created_at, expires_at, revoked_at, updated_at FROM bans ORDER BY updated_at DESC LIMIT 500";
         StringBuilder rows = new StringBuilder(150_000);
@@ -302,46 +346,16 @@ public final class AdminRepository {
         LiveBus.publishInvalidate("roles", "users");
     }
 
-    public void banPlayerByXuid(String xuid, String reason, Integer durationHours) throws Exception {
-        if (xuid == null || xuid.isBlank()) throw new IllegalArgumentException("xuid missing");
-        if (reason == null || reason.isBlank()) reason = "No reason";
-
-        try (Connection c = db.getConnection()) {
-            if (!playerExists(c, xuid)) upsertPlayerStub(c, xuid);
-            if (hasActiveBan(c, xuid)) return;
-
-            Timestamp expiresAt = null;
-            if (durationHours != null && durationHours > 0) {
-                expiresAt = Timestamp.from(Instant.now().plusSeconds(durationHours * 3600L));
-            }
-
-            try (PreparedStatement ps = c.prepareStatement(
-                    "INSERT INTO bans(xuid, reason, created_at, expires_at, revoked_at, updated_at, actor_type, actor_username, actor_server_key) " +
-                            "VALUES(?, ?, CURRENT_TIMESTAMP(3), ?, NULL, CURRENT_TIMESTAMP(3), 'WEB', NULL, NULL)"
-            )) {
-                ps.setString(1, xuid);
-                ps.setString(2, reason);
-                ps.setTimestamp(3, expiresAt);
-                ps.executeUpdate();
-            }
+    public void banPlayerByXuid(String xuid, String reason, Integer durationHours, List<String> cidrs) throws Exception {
+        Timestamp expiresAt = null;
+        if (durationHours != null && durationHours > 0) {
+            expiresAt = Timestamp.from(Instant.now().plusSeconds(durationHours * 3600L));
         }
-
-        LiveBus.publishInvalidate("bans", "players");
+        bansRepo.banByWeb(xuid, reason, expiresAt, cidrs);
     }
 
     public void unbanPlayerByXuid(String xuid) throws Exception {
-        if (xuid == null || xuid.isBlank()) throw new IllegalArgumentException("xuid missing");
-
-        try (Connection c = db.getConnection();
-             PreparedStatement ps = c.prepareStatement(
-                     "UPDATE bans SET revoked_at=CURRENT_TIMESTAMP(3), updated_at=CURRENT_TIMESTAMP(3) " +
-                             "WHERE xuid=? AND revoked_at IS NULL AND (expires_at IS NULL OR expires_at > CURRENT_TIMESTAMP(3))"
-             )) {
-            ps.setString(1, xuid);
-            ps.executeUpdate();
-        }
-
-        LiveBus.publishInvalidate("bans", "players");
+        bansRepo.revokeActiveByWeb(xuid);
     }
 
     // ---------------- Live JSON ----------------
@@ -349,8 +363,9 @@ public final class AdminRepository {
     public String playersLiveJson() throws Exception {
         long totalPlayers = count("SELECT COUNT(*) FROM players");
         long playersWithStats = count("SELECT COUNT(*) FROM players p JOIN player_stats s ON s.xuid = p.xuid");
-        long totalBans = count("SELECT COUNT(*) FROM bans");
-        long activeBans = count("SELECT COUNT(*) FROM bans b WHERE b.revoked_at IS NULL AND (b.expires_at IS NULL OR b.expires_at > CURRENT_TIMESTAMP(3))");
+        BansRepository.BanCounts banCounts = bansRepo.counts();
+        long totalBans = banCounts.total();
+        long activeBans = banCounts.active();
 
         String sql =
                 "SELECT p.xuid, p.last_name, p.last_seen_at, p.online, p.online_updated_at, " +
@@ -397,9 +412,10 @@ public final class AdminRepository {
 
     public String bansLiveJson() throws Exception {
         long totalPlayers = count("SELECT COUNT(*) FROM players");
-        long totalBans = count("SELECT COUNT(*) FROM bans");
-        long activeBans = count("SELECT COUNT(*) FROM bans b WHERE b.revoked_at IS NULL AND (b.expires_at IS NULL OR b.expires_at > CURRENT_TIMESTAMP(3))");
-        long revokedBans = count("SELECT COUNT(*) FROM bans b WHERE b.revoked_at IS NOT NULL");
+        BansRepository.BanCounts banCounts = bansRepo.counts();
+        long totalBans = banCounts.total();
+        long activeBans = banCounts.active();
+        long revokedBans = banCounts.revoked();
 
         String sql = "SELECT ban_id, xuid, reason, created_at, expires_at, revoked_at, updated_at FROM bans ORDER BY updated_at DESC LIMIT 500";
         StringBuilder rows = new StringBuilder(150_000);
@@ -506,6 +522,61 @@ public final class AdminRepository {
         }
     }
 
+    private List<PlayerIdentifier> loadIdentifiers(String xuid) throws Exception {
+        String sql =
+                "SELECT type, value, first_seen, last_seen " +
+                        "FROM player_identifiers WHERE xuid=? ORDER BY last_seen DESC LIMIT 100";
+
+        try (Connection c = db.getConnection();
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            ps.setString(1, xuid);
+            try (ResultSet rs = ps.executeQuery()) {
+                var out = new java.util.ArrayList<PlayerIdentifier>();
+                while (rs.next()) {
+                    out.add(new PlayerIdentifier(
+                            rs.getString("type"),
+                            rs.getString("value"),
+                            AdminUiUtil.toIso(rs.getTimestamp("first_seen")),
+                            AdminUiUtil.toIso(rs.getTimestamp("last_seen"))
+                    ));
+                }
+                return out;
+            }
+        }
+    }
+
+    /**
+     * Group members from the in-memory index; names by primary key, ban state from the ban index.
+     */
+    private List<LinkedAccount> loadLinkedAccounts(String xuid) throws Exception {
+        List<LinkedAccountIndex.Linked> linked = links.linked(xuid, LINKED_MAX);
+        if (linked.isEmpty()) return List.of();
+
+        Map<String, String> names = new java.util.HashMap<>();
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < linked.size(); i++) in.append(i == 0 ? "?" : ",?");
+        try (Connection c = db.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT xuid, last_name FROM players WHERE xuid IN (" + in + ")")) {
+            for (int i = 0; i < linked.size(); i++) ps.setString(i + 1, linked.get(i).xuid());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) names.put(rs.getString("xuid"), rs.getString("last_name"));
+            }
+        }
+
+        Instant now = Instant.now();
+        var out = new java.util.ArrayList<LinkedAccount>(linked.size());
+        for (LinkedAccountIndex.Linked l : linked) {
+            String name = names.get(l.xuid());
+            out.add(new LinkedAccount(
+                    l.xuid(),
+                    (name == null || name.isBlank()) ? "Unknown" : name,
+                    bansRepo.banIndex().check(l.xuid(), null, null, now) != null,
+                    l.shared()
+            ));
+        }
+        return out;
+    }
+
     private List<BanEvent> loadBanEvents(long banId) throws Exception {
         String sql =
                 "SELECT event_type, actor_type, actor_username, actor_server_key, created_at, details " +
@@ -547,32 +618,6 @@ public final class AdminRepository {
         }
     }
 
-    private static boolean hasActiveBan(Connection c, String xuid) throws Exception {
-        try (PreparedStatement ps = c.prepareStatement(
-                "SELECT 1 FROM bans WHERE xuid=? AND revoked_at IS NULL AND (expires_at IS NULL OR expires_at > CURRENT_TIMESTAMP(3)) LIMIT 1"
-        )) {
-            ps.setString(1, xuid);
-            try (ResultSet rs = ps.executeQuery()) { return rs.next(); }
-        }
-    }
-
-    private static boolean playerExists(Connection c, String xuid) throws Exception {
-        try (PreparedStatement ps = c.prepareStatement("SELECT 1 FROM players WHERE xuid=? LIMIT 1")) {
-            ps.setString(1, xuid);
-            try (ResultSet rs = ps.executeQuery()) { return rs.next(); }
-        }
-    }
-
-    private static void upsertPlayerStub(Connection c, String xuid) throws Exception {
-        try (PreparedStatement ps = c.prepareStatement(
-                "INSERT INTO players(xuid, last_name, last_seen_at) VALUES(?, 'Unknown', CURRENT_TIMESTAMP(3)) " +
-                        "ON DUPLICATE KEY UPDATE last_seen_at=CURRENT_TIMESTAMP(3)"
-        )) {
-            ps.setString(1, xuid);
-            ps.executeUpdate();
-        }
-    }
-
     private List<WebRole> loadRoles() throws Exception {
         var out = new java.util.ArrayList<WebRole>();
         try (Connection c = db.getConnection();
@@ -635,6 +680,13 @@ public final class AdminRepository {
 
     private record BanState(long banId, String reason, String createdAtIso, String expiresAtIso, String updatedAtIso) {}
 
+    public record PlayerIdentifier(String type, String value, String firstSeenIso, String lastSeenIso) {}
+
+    /**
+     * @param shared identifiers in common with the viewed player; empty if linked indirectly
+     */
+    public record LinkedAccount(String xuid, String name, boolean banned, List<LinkedAccountIndex.Identifier> shared) {}
+
     public record BanEvent(
             String eventType,
             String actorType,
@@ -0,0 +1,175 @@
+package org.backendbridge.repo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Versioned Bloom filter over all actively banned identifiers, for client-side prefiltering.
+ *
+ * <p>Game servers fetch the filter and only call the ban check API for players that hit it;
+ * a miss is definite (not banned as of the filter's version).</p>
+ *
+ * <p>Encoding (all integers big-endian):</p>
+ * - header: {@code "BBF1"}, {@code u64 version}, {@code u32 bits (m)}, {@code u8 hashes (k)},
+ *   {@code u32 entries (n)}, followed by {@code ceil(m/8)} bytes of bits; bit {@code j} is
+ *   {@code bytes[j >> 3] & (1 << (j & 7))}
+ * - key: UTF-8 of {@code TYPE + ":" + value}, TYPE one of XUID/IP/HWID, value trimmed and
+ *   for IP lower-cased
+ * - {@code h = FNV-1a 64(key)}, {@code h1 = h & 0xFFFFFFFF}, {@code h2 = h >>> 32};
+ *   bit {@code i} (0..k-1) is {@code (h1 + i * h2) mod m}
+ * - after the bits: {@code u32 ranges}, then per banned CIDR range {@code u8 addrLen (4|16)},
+ *   the network address, {@code u8 prefixLength}. Ranges cannot be hashed, so clients match
+ *   IPs against this list in addition to the filter
+ *
+ * <p>Rebuilt from {@link BanIndex} (no DB access) on a background thread: shortly after a
+ * ban change (changes within {@code rebuildDelayMs} are coalesced) and every 10 minutes
+ * so expired bans drop out. The version only moves when the bits change.</p>
+ */
+public final class BanBloomFilter {
+
+    private static final long REFRESH_MS = 10 * 60_000L;
+    private static final int HEADER = 4 + 8 + 4 + 1 + 4;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * @param entries hashed identifiers plus ranges
+     * @param encoded the full response body (header, bits, ranges)
+     */
+    public record Snapshot(long version, int entries, byte[] encoded) {}
+
+    private final BanIndex index;
+    private final double falsePositiveRate;
+    private final long rebuildDelayMs;
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private final ScheduledExecutorService rebuilder;
+    private volatile Snapshot current;
+
+    public BanBloomFilter(BanIndex index, double falsePositiveRate, long rebuildDelayMs) {
+        this.index = index;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildDelayMs = Math.max(0L, rebuildDelayMs);
+        this.current = build(1);
+
+        this.rebuilder = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bb-ban-bloom");
+            t.setDaemon(true);
+            return t;
+        });
+        this.rebuilder.scheduleWithFixedDelay(this::rebuildQuietly, REFRESH_MS, REFRESH_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public Snapshot current() {
+        return current;
+    }
+
+    public String etag(Snapshot snapshot) {
+        return "\"bf-" + bootId + "-" + snapshot.version() + "\"";
+    }
+
+    /**
+     * A ban changed; schedules a rebuild (at most one pending).
+     */
+    public void markDirty() {
+        if (rebuildQueued.compareAndSet(false, true)) {
+            rebuilder.schedule(this::rebuildQuietly, rebuildDelayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Rebuilds synchronously; the version moves only if the bits changed.
+     */
+    public synchronized void rebuild() {
+        rebuildQueued.set(false);
+        Snapshot prev = current;
+        Snapshot next = build(prev.version() + 1);
+        if (next.entries() == prev.entries() && sameBits(prev.encoded(), next.encoded())) return;
+        current = next;
+    }
+
+    public void close() {
+        rebuilder.shutdownNow();
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            System.out.println("[BackendBridgeService] Ban bloom filter rebuild failed: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    private Snapshot build(long version) {
+        List<byte[]> keys = new ArrayList<>();
+        List<IpPrefixTrie.Prefix> ranges = new ArrayList<>();
+        index.forEachActiveTarget(Instant.now(), (type, value) -> {
+            if (type == BanIndex.TargetType.CIDR) ranges.add(IpPrefixTrie.parsePrefix(value));
+            else keys.add(key(type, value));
+        });
+
+        int n = Math.max(1, keys.size());
+        long m = Math.max(64L, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        m = Math.min(m, Integer.MAX_VALUE - 7L);
+        int k = (int) Math.max(1, Math.min(30, Math.round((double) m / n * Math.log(2))));
+
+        int bitBytes = (int) ((m + 7) / 8);
+        int rangeBytes = 4;
+        for (IpPrefixTrie.Prefix p : ranges) rangeBytes += 2 + p.net().length;
+
+        ByteBuffer out = ByteBuffer.allocate(HEADER + bitBytes + rangeBytes);
+        out.put((byte) 'B').put((byte) 'B').put((byte) 'F').put((byte) '1')
+                .putLong(version)
+                .putInt((int) m)
+                .put((byte) k)
+                .putInt(keys.size());
+        out.position(HEADER + bitBytes);
+        out.putInt(ranges.size());
+        for (IpPrefixTrie.Prefix p : ranges) {
+            out.put((byte) p.net().length).put(p.net()).put((byte) p.length());
+        }
+        byte[] body = out.array();
+
+        for (byte[] key : keys) {
+            long h = fnv1a64(key);
+            long h1 = h & 0xFFFFFFFFL;
+            long h2 = h >>> 32;
+            for (int i = 0; i < k; i++) {
+                long bit = (h1 + i * h2) % m;
+                body[HEADER + (int) (bit >>> 3)] |= (byte) (1 << (bit & 7));
+            }
+        }
+        return new Snapshot(version, keys.size() + ranges.size(), body);
+    }
+
+    static byte[] key(BanIndex.TargetType type, String normalizedValue) {
+        return (type.name() + ":" + normalizedValue).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static long fnv1a64(byte[] data) {
+        long h = FNV_OFFSET;
+        for (byte b : data) {
+            h ^= (b & 0xFF);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Compares everything after the version field.
+     */
+    private static boolean sameBits(byte[] a, byte[] b) {
+        return a.length == b.length
+                && Arrays.equals(a, 0, 4, b, 0, 4)
+                && Arrays.equals(a, 12, a.length, b, 12, b.length);
+    }
+}
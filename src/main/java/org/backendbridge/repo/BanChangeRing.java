@@ -0,0 +1,99 @@
+package org.backendbridge.repo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded buffer of the most recent {@code ban_changes} rows, each already serialized to
+ * its JSON fragment.
+ *
+ * <p>The buffer is complete for every {@code seq > floor}: {@link BansRepository} adds
+ * changes in commit order while holding its write lock, and the floor moves up as old
+ * entries are evicted. Cursors below the floor return null and are served from the DB.</p>
+ */
+public final class BanChangeRing {
+
+    /**
+     * @param type the {@code change_type}, e.g. BAN_UPSERT
+     * @param json the serialized change object (UTF-8), shared by every reader
+     */
+    public record Change(long seq, String type, byte[] json) {}
+
+    /**
+     * @param changes in seq order
+     * @param nextCursor seq of the last change, or the requested cursor if there is none
+     */
+    public record Page(List<Change> changes, long nextCursor, boolean hasMore) {}
+
+    private final long[] seqs;
+    private final Change[] entries;
+    private int head;
+    private int size;
+
+    /** Until {@link #reset} runs nothing is served from memory. */
+    private long floor = Long.MAX_VALUE;
+
+    BanChangeRing(int capacity) {
+        this.seqs = new long[Math.max(1, capacity)];
+        this.entries = new Change[seqs.length];
+    }
+
+    /**
+     * Replaces the content. {@code changes} must be in ascending seq order; {@code floor} is the
+     * highest seq that is NOT covered (0 when the buffer holds the whole log).
+     */
+    synchronized void reset(long floor, List<Change> changes) {
+        head = 0;
+        size = 0;
+        this.floor = floor;
+        for (Change c : changes) add(c);
+    }
+
+    /**
+     * Appends a committed change. Seqs must arrive in ascending order.
+     */
+    synchronized void add(Change change) {
+        if (floor == Long.MAX_VALUE) return;
+
+        if (size == seqs.length) {
+            floor = seqs[head];
+            entries[head] = null;
+            head = (head + 1) % seqs.length;
+            size--;
+        }
+        int i = (head + size) % seqs.length;
+        seqs[i] = change.seq();
+        entries[i] = change;
+        size++;
+    }
+
+    /**
+     * Changes with {@code seq > cursor}, at most {@code limit}; null if the cursor is older
+     * than the buffer.
+     */
+    public synchronized Page page(long cursor, int limit) {
+        if (cursor < floor) return null;
+
+        // First entry with seq > cursor (seqs ascend along the ring).
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (seqs[(head + mid) % seqs.length] <= cursor) lo = mid + 1;
+            else hi = mid;
+        }
+
+        int n = Math.min(limit, size - lo);
+        List<Change> out = new ArrayList<>(n);
+        long next = cursor;
+        for (int k = lo; k < lo + n; k++) {
+            int i = (head + k) % seqs.length;
+            out.add(entries[i]);
+            next = seqs[i];
+        }
+        return new Page(out, next, lo + n < size);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,256 @@
+package org.backendbridge.repo;
+
+import org.backendbridge.Db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * In-memory index of active bans by XUID, IP, HWID and IP range (CIDR).
+ *
+ * <p>Loaded once from {@code bans} + {@code ban_targets} at startup and kept current by
+ * {@link BansRepository} after each committed write, so join-time checks need no DB access.</p>
+ *
+ * <ul>
+ *   <li>a ban is indexed under its owner xuid and every target row</li>
+ *   <li>CIDR targets live in an {@link IpPrefixTrie}; an IP lookup walks at most the
+ *       address length in bits</li>
+ *   <li>expiry is evaluated at lookup time; expired entries are dropped when met</li>
+ *   <li>revoked bans are removed immediately</li>
+ *   <li>lookups are lock-free; the rare writes are serialized</li>
+ * </ul>
+ */
+public final class BanIndex {
+
+    public enum TargetType { XUID, IP, HWID, CIDR }
+
+    /**
+     * @param expiresAt null for permanent bans
+     */
+    public record Ban(long banId, String xuid, String reason, Instant createdAt, Instant expiresAt) {
+        public boolean activeAt(Instant now) {
+            return expiresAt == null || expiresAt.isAfter(now);
+        }
+    }
+
+    public record Target(TargetType type, String value) {}
+
+    /**
+     * @param matchedOn which identifier hit the ban
+     */
+    public record Match(Ban ban, TargetType matchedOn) {}
+
+    private final ConcurrentHashMap<Long, Ban> bans = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, List<Target>> targetsByBan = new ConcurrentHashMap<>();
+    private final Map<TargetType, ConcurrentHashMap<String, Set<Long>>> byTarget = Map.of(
+            TargetType.XUID, new ConcurrentHashMap<>(),
+            TargetType.IP, new ConcurrentHashMap<>(),
+            TargetType.HWID, new ConcurrentHashMap<>(),
+            TargetType.CIDR, new ConcurrentHashMap<>()
+    );
+    private final IpPrefixTrie ranges = new IpPrefixTrie();
+
+    /**
+     * Replaces the index with all currently active bans. Returns the number of bans loaded.
+     */
+    public int load(Db db) throws Exception {
+        Map<Long, Ban> loaded = new LinkedHashMap<>();
+        Map<Long, List<Target>> targets = new HashMap<>();
+
+        try (Connection c = db.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT b.ban_id, b.xuid, b.reason, b.created_at, b.expires_at, t.target_type, t.target_value " +
+                             "FROM bans b LEFT JOIN ban_targets t ON t.ban_id=b.ban_id " +
+                             "WHERE b.revoked_at IS NULL AND (b.expires_at IS NULL OR b.expires_at > CURRENT_TIMESTAMP(3))"
+             );
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                long banId = rs.getLong("ban_id");
+                if (!loaded.containsKey(banId)) {
+                    Timestamp exp = rs.getTimestamp("expires_at");
+                    loaded.put(banId, new Ban(
+                            banId,
+                            rs.getString("xuid"),
+                            rs.getString("reason"),
+                            rs.getTimestamp("created_at").toInstant(),
+                            exp == null ? null : exp.toInstant()
+                    ));
+                }
+
+                String type = rs.getString("target_type");
+                String value = rs.getString("target_value");
+                TargetType tt = parseType(type);
+                if (tt != null && value != null) {
+                    targets.computeIfAbsent(banId, k -> new ArrayList<>()).add(new Target(tt, value));
+                }
+            }
+        }
+
+        synchronized (this) {
+            clear();
+            for (Ban b : loaded.values()) put(b, targets.getOrDefault(b.banId(), List.of()));
+        }
+        return loaded.size();
+    }
+
+    /**
+     * Adds (or replaces) a ban. Call after the write committed.
+     */
+    public synchronized void put(Ban ban, List<Target> targets) {
+        List<Target> all = new ArrayList<>(targets.size() + 1);
+        all.add(new Target(TargetType.XUID, ban.xuid()));
+        for (Target t : targets) {
+            if (t.value() == null || t.value().isBlank()) continue;
+            Target n = (t.type() == TargetType.CIDR) ? canonicalCidr(t) : t;
+            if (n != null && !all.contains(n)) all.add(n);
+        }
+
+        remove(ban.banId());
+        bans.put(ban.banId(), ban);
+        targetsByBan.put(ban.banId(), List.copyOf(all));
+        for (Target t : all) {
+            byTarget.get(t.type())
+                    .computeIfAbsent(normalize(t.type(), t.value()), k -> ConcurrentHashMap.newKeySet())
+                    .add(ban.banId());
+            if (t.type() == TargetType.CIDR) ranges.add(IpPrefixTrie.parsePrefix(t.value()), ban.banId());
+        }
+    }
+
+    public synchronized void remove(long banId) {
+        bans.remove(banId);
+        List<Target> targets = targetsByBan.remove(banId);
+        if (targets == null) return;
+
+        for (Target t : targets) {
+            if (t.type() == TargetType.CIDR) ranges.remove(IpPrefixTrie.parsePrefix(t.value()), banId);
+            String key = normalize(t.type(), t.value());
+            byTarget.get(t.type()).computeIfPresent(key, (k, ids) -> {
+                ids.remove(banId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+    }
+
+    /**
+     * Removes all bans owned by {@code xuid} (Admin UI unban revokes by owner).
+     */
+    public synchronized void removeByOwner(String xuid) {
+        Set<Long> ids = byTarget.get(TargetType.XUID).get(normalize(TargetType.XUID, xuid));
+        if (ids == null) return;
+        for (Long id : List.copyOf(ids)) {
+            Ban b = bans.get(id);
+            if (b != null && b.xuid().equals(xuid)) remove(id);
+        }
+    }
+
+    /**
+     * First active ban matching any of the identifiers (checked xuid, hwid, ip, ip ranges), or null.
+     */
+    public Match check(String xuid, String ip, String hwid, Instant now) {
+        Match m = find(TargetType.XUID, xuid, now);
+        if (m == null) m = find(TargetType.HWID, hwid, now);
+        if (m == null) m = find(TargetType.IP, ip, now);
+        if (m == null) m = findRange(ip, now);
+        return m;
+    }
+
+    public int size() {
+        return bans.size();
+    }
+
+    public void forEachBan(Consumer<Ban> sink) {
+        for (Ban b : bans.values()) sink.accept(b);
+    }
+
+    /**
+     * Calls {@code sink} once per identifier that has at least one ban active at {@code now}.
+     * Values are normalized as for lookups (trimmed; IPs lower-case).
+     */
+    public void forEachActiveTarget(Instant now, BiConsumer<TargetType, String> sink) {
+        for (Map.Entry<TargetType, ConcurrentHashMap<String, Set<Long>>> byType : byTarget.entrySet()) {
+            for (Map.Entry<String, Set<Long>> e : byType.getValue().entrySet()) {
+                for (Long id : e.getValue()) {
+                    Ban b = bans.get(id);
+                    if (b != null && b.activeAt(now)) {
+                        sink.accept(byType.getKey(), e.getKey());
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private Match find(TargetType type, String value, Instant now) {
+        if (value == null || value.isBlank()) return null;
+
+        Set<Long> ids = byTarget.get(type).get(normalize(type, value));
+        if (ids == null) return null;
+
+        for (Long id : ids) {
+            Ban b = bans.get(id);
+            if (b == null) continue;
+            if (b.activeAt(now)) return new Match(b, type);
+            remove(id);
+        }
+        return null;
+    }
+
+    private Match findRange(String ip, Instant now) {
+        byte[] addr = IpPrefixTrie.parseAddress(ip);
+        if (addr == null) return null;
+
+        for (Long id : ranges.match(addr)) {
+            Ban b = bans.get(id);
+            if (b == null) continue;
+            if (b.activeAt(now)) return new Match(b, TargetType.CIDR);
+            remove(id);
+        }
+        return null;
+    }
+
+    /**
+     * CIDR target in canonical form (host bits cleared), or null if it does not parse.
+     */
+    private static Target canonicalCidr(Target t) {
+        try {
+            return new Target(TargetType.CIDR, IpPrefixTrie.parsePrefix(t.value()).canonical());
+        } catch (IllegalArgumentException e) {
+            System.out.println("[BackendBridgeService] Ignoring invalid CIDR ban target: " + t.value());
+            return null;
+        }
+    }
+
+    private void clear() {
+        ranges.clear();
+        bans.clear();
+        targetsByBan.clear();
+        for (ConcurrentHashMap<String, Set<Long>> m : byTarget.values()) m.clear();
+    }
+
+    static TargetType parseType(String type) {
+        if (type == null) return null;
+        try {
+            return TargetType.valueOf(type.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String normalize(TargetType type, String value) {
+        String v = value.trim();
+        return (type == TargetType.IP) ? v.toLowerCase(Locale.ROOT) : v;
+    }
+}
@@ -5,35 +5,522 @@ import org.backendbridge.Db;
 import org.backendbridge.Json;
 import org.backendbridge.LiveBus;
 
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Ban persistence and server-to-backend ban reporting.
  *
  * <p>Features:</p>
  * <ul>
- *   <li>fetchBanChangesJson(sinceIso): for game server sync</li>
+ *   <li>fetchBanChangesByCursorJson(cursor, limit): exact, paged game server sync</li>
+ *   <li>fetchBanChangesJson(sinceIso): legacy timestamp sync</li>
+ *   <li>writeBanSnapshot(out): streamed bootstrap of all active bans</li>
  *   <li>reportServerBan(serverKey, banNode): store + audit + targets</li>
+ *   <li>banByWeb / revokeActiveByWeb: Admin UI ban actions</li>
+ *   <li>IP range (CIDR) targets: stored as VARBINARY network + prefix length</li>
  * </ul>
+ *
+ * <p>All ban writes go through this class and bump an in-memory version after commit.
+ * The version backs the ETag of {@code /api/server/bans/changes}, so unchanged polls
+ * are answered with 304 without a query. The same writes keep the {@link BanIndex}
+ * current for join-time checks. The index, expiry wheel and counters are updated under
+ * {@link #writeLock} right after the commit, so they see the writes in commit order.</p>
+ *
+ * <p>Every mutation appends a row to {@code ban_changes} in the same transaction; its
+ * auto-increment {@code seq} is the sync cursor. Ban write transactions are serialized on
+ * {@link #writeLock}, so seq values commit in order and a reader never sees seq N+1
+ * before N (no change can slip behind a cursor that was already handed out). The newest
+ * changes are also kept serialized in a {@link BanChangeRing}, so polls from many servers
+ * are answered without a query.</p>
+ *
+ * <p>Temporary bans are filed in a {@link TimerWheel} by {@code expires_at}. When one runs
+ * out, an {@code EXPIRED} change is logged and {@code updated_at} is bumped like for any
+ * other mutation, so sync consumers and the Admin UI learn about it without re-evaluating
+ * timestamps. Ban counters ({@link #counts()}) are kept in memory from the same events.</p>
  */
 public final class BansRepository {
 
+    private static final Instant EPOCH = Instant.parse("1970-01-01T00:00:00Z");
+
+    /** Recent changes kept serialized in memory; polls with an older cursor read the DB. */
+    private static final int CHANGE_BUFFER = 4096;
+
+    /** Expiry resolution: a ban's EXPIRED change is written within one tick of expires_at. */
+    private static final long EXPIRY_TICK_MS = 1000L;
+    private static final long EXPIRY_RETRY_MS = 5000L;
+    private static final int EXPIRY_BATCH = 500;
+
     private final Db db;
     private final int maxRows;
 
+    private final String bootId = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong version = new AtomicLong();
+    private final BanIndex index = new BanIndex();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final BanChangeRing changes = new BanChangeRing(CHANGE_BUFFER);
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+    private final TimerWheel expiries = new TimerWheel(EXPIRY_TICK_MS, System.currentTimeMillis());
+    private final AtomicLong totalBans = new AtomicLong();
+    private final AtomicLong revokedBans = new AtomicLong();
+    private ScheduledExecutorService expiryTicker;
+
     public BansRepository(Db db, int maxRows) {
         this.db = db;
         this.maxRows = Math.max(1, maxRows);
     }
 
-    public String fetchBanChangesJson(String sinceIso) throws Exception {
-        Instant since;
+    /**
+     * Ban totals for the Admin UI; active is every indexed (not revoked, not expired) ban.
+     */
+    public record BanCounts(long total, long active, long revoked) {}
+
+    /**
+     * Loads all active bans into the in-memory index and the ban counters. Call once at startup.
+     */
+    public int loadBanIndex() throws Exception {
+        int loaded = index.load(db);
+        try (Connection c = db.getConnection();
+             PreparedStatement ps = c.prepareStatement("SELECT COUNT(*), COALESCE(SUM(revoked_at IS NOT NULL), 0) FROM bans");
+             ResultSet rs = ps.executeQuery()) {
+            if (rs.next()) {
+                totalBans.set(rs.getLong(1));
+                revokedBans.set(rs.getLong(2));
+            }
+        }
+        return loaded;
+    }
+
+    public BanIndex banIndex() {
+        return index;
+    }
+
+    public BanCounts counts() {
+        return new BanCounts(totalBans.get(), index.size(), revokedBans.get());
+    }
+
+    /**
+     * Files every indexed temporary ban in the expiry wheel and starts the expiry thread.
+     * Bans that ran out while the backend was down get their EXPIRED change first.
+     * Call once at startup, after {@link #loadBanIndex()} and {@link #loadRecentChanges()}.
+     * Returns the number of pending expiries.
+     */
+    public int startExpiry() {
+        index.forEachBan(b -> {
+            if (b.expiresAt() != null) expiries.schedule(b.banId(), b.expiresAt().toEpochMilli());
+        });
+
+        expiryTicker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bb-ban-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+        expiryTicker.execute(this::expireOverdue);
+        expiryTicker.scheduleWithFixedDelay(this::expireDue, EXPIRY_TICK_MS, EXPIRY_TICK_MS, TimeUnit.MILLISECONDS);
+        return expiries.size();
+    }
+
+    /**
+     * Stops the expiry ticker and waits for an expiry run in flight. Call before closing the {@link Db}.
+     */
+    public void close() throws InterruptedException {
+        if (expiryTicker == null) return;
+        expiryTicker.shutdownNow();
+        expiryTicker.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private void expireDue() {
+        List<Long> due = expiries.advance(System.currentTimeMillis());
+        for (int i = 0; i < due.size(); i += EXPIRY_BATCH) {
+            List<Long> batch = due.subList(i, Math.min(due.size(), i + EXPIRY_BATCH));
+            try {
+                expire(batch);
+            } catch (Exception e) {
+                System.out.println("[BackendBridgeService] Ban expiry failed (retrying): " + e.getClass().getSimpleName() + ": " + e.getMessage());
+                long retryAt = System.currentTimeMillis() + EXPIRY_RETRY_MS;
+                for (long banId : batch) expiries.schedule(banId, retryAt);
+            }
+        }
+    }
+
+    /**
+     * Expired bans whose expiry was never logged ({@code updated_at} still before {@code expires_at}).
+     */
+    private void expireOverdue() {
         try {
-            since = Instant.parse(sinceIso);
+            int total = 0;
+            while (true) {
+                List<Long> overdue = new ArrayList<>();
+                try (Connection c = db.getConnection();
+                     PreparedStatement ps = c.prepareStatement(
+                             "SELECT ban_id FROM bans " +
+                                     "WHERE revoked_at IS NULL AND expires_at IS NOT NULL AND expires_at <= ? AND updated_at < expires_at " +
+                                     "ORDER BY ban_id LIMIT " + EXPIRY_BATCH
+                     )) {
+                    ps.setTimestamp(1, Timestamp.from(Instant.now()));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) overdue.add(rs.getLong(1));
+                    }
+                }
+                if (overdue.isEmpty()) break;
+                total += expire(overdue);
+                if (overdue.size() < EXPIRY_BATCH) break;
+            }
+            if (total > 0) System.out.println("[BackendBridgeService] Ban expiry caught up: " + total + " bans expired while offline");
         } catch (Exception e) {
-            since = Instant.parse("1970-01-01T00:00:00Z");
+            System.out.println("[BackendBridgeService] Ban expiry catch-up failed: " + e.getClass().getSimpleName() + ": " + e.getMessage());
         }
+    }
+
+    /**
+     * Logs an EXPIRED change for each ban that is still unrevoked and past expires_at (others are
+     * skipped: revoked meanwhile). Returns the number of expired bans.
+     */
+    private int expire(List<Long> banIds) throws Exception {
+        Timestamp nowTs = Timestamp.from(Instant.now().truncatedTo(ChronoUnit.MILLIS));
+        List<Long> expired = new ArrayList<>(banIds.size());
+        List<BanChangeRing.Change> logged = new ArrayList<>(banIds.size());
+
+        writeLock.lock();
+        try (Connection c = db.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                StringBuilder sql = new StringBuilder("SELECT ban_id FROM bans WHERE ban_id IN (");
+                for (int i = 0; i < banIds.size(); i++) sql.append(i == 0 ? "?" : ",?");
+                sql.append(") AND revoked_at IS NULL AND expires_at <= ? FOR UPDATE");
+
+                try (PreparedStatement ps = c.prepareStatement(sql.toString())) {
+                    int i = 1;
+                    for (long banId : banIds) ps.setLong(i++, banId);
+                    ps.setTimestamp(i, nowTs);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) expired.add(rs.getLong(1));
+                    }
+                }
+
+                if (!expired.isEmpty()) {
+                    try (PreparedStatement ps = c.prepareStatement("UPDATE bans SET updated_at=? WHERE ban_id=?")) {
+                        for (long banId : expired) {
+                            ps.setTimestamp(1, nowTs);
+                            ps.setLong(2, banId);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                    for (long banId : expired) logged.add(logChange(c, banId, "EXPIRED"));
+                }
+
+                c.commit();
+                for (BanChangeRing.Change change : logged) changes.add(change);
+                for (long banId : expired) index.remove(banId);
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (expired.isEmpty()) return 0;
+
+        version.incrementAndGet();
+        LiveBus.publishInvalidate("bans", "players");
+        fireChanged();
+        return expired.size();
+    }
+
+    /**
+     * Join-time check against the in-memory index (no DB access).
+     */
+    public String checkBanJson(String xuid, String ip, String hwid) {
+        StringBuilder out = new StringBuilder(256);
+        appendCheck(out, xuid, ip, hwid, Instant.now());
+        return out.toString();
+    }
+
+    /**
+     * Checks several players at once: {"players":[{xuid, ip, hwid}, ...]} -> {"results":[...]} in input order.
+     */
+    public String checkBansJson(JsonNode players, int maxPlayers) {
+        if (players == null || !players.isArray()) throw new IllegalArgumentException("players array missing");
+        if (players.size() > maxPlayers) throw new IllegalArgumentException("too many players (max " + maxPlayers + ")");
+
+        Instant now = Instant.now();
+        StringBuilder out = new StringBuilder(64 + players.size() * 96);
+        out.append("{\"results\":[");
+        boolean first = true;
+        for (JsonNode p : players) {
+            if (!first) out.append(',');
+            first = false;
+            appendCheck(out, text(p, "xuid"), text(p, "ip"), text(p, "hwid"), now);
+        }
+        out.append("]}");
+        return out.toString();
+    }
+
+    private void appendCheck(StringBuilder out, String xuid, String ip, String hwid, Instant now) {
+        BanIndex.Match m = index.check(xuid, ip, hwid, now);
+        out.append("{\"xuid\":").append(Json.js(xuid)).append(",\"banned\":").append(m != null);
+        if (m != null) {
+            BanIndex.Ban b = m.ban();
+            out.append(",\"matchedOn\":").append(Json.js(m.matchedOn().name()))
+                    .append(",\"ban\":{")
+                    .append("\"banId\":").append(b.banId()).append(',')
+                    .append("\"xuid\":").append(Json.js(b.xuid())).append(',')
+                    .append("\"reason\":").append(Json.js(b.reason())).append(',')
+                    .append("\"createdAt\":").append(Json.js(b.createdAt().toString())).append(',')
+                    .append("\"expiresAt\":").append(b.expiresAt() == null ? "null" : Json.js(b.expiresAt().toString()))
+                    .append('}');
+        }
+        out.append('}');
+    }
+
+    /**
+     * Streams all active bans with their targets as NDJSON, one ban per line, followed by
+     * {@code {"type":"END","cursor":N,"bans":M}}. Continue with the cursor API from {@code N}.
+     *
+     * <p>The cursor and the ban rows are read in one transaction (one consistent snapshot), and
+     * the rows come from a forward-only streaming result set, so memory stays constant however
+     * many bans exist. A response without the END line was cut off and must be retried.</p>
+     */
+    public void writeBanSnapshot(OutputStream os) throws Exception {
+        Writer w = new BufferedWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8), 64 * 1024);
+
+        try (Connection c = db.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                long cursor;
+                try (PreparedStatement ps = c.prepareStatement("SELECT COALESCE(MAX(seq), 0) FROM ban_changes");
+                     ResultSet rs = ps.executeQuery()) {
+                    rs.next();
+                    cursor = rs.getLong(1);
+                }
+
+                long count = 0;
+                try (PreparedStatement ps = c.prepareStatement(
+                        "SELECT b.ban_id, b.xuid, b.reason, b.created_at, b.expires_at, t.target_type, t.target_value " +
+                                "FROM bans b LEFT JOIN ban_targets t ON t.ban_id=b.ban_id " +
+                                "WHERE b.revoked_at IS NULL AND (b.expires_at IS NULL OR b.expires_at > CURRENT_TIMESTAMP(3)) " +
+                                "ORDER BY b.ban_id",
+                        ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY
+                )) {
+                    // MySQL Connector/J: row-by-row streaming instead of buffering the whole result.
+                    ps.setFetchSize(Integer.MIN_VALUE);
+
+                    try (ResultSet rs = ps.executeQuery()) {
+                        long current = -1;
+                        while (rs.next()) {
+                            long banId = rs.getLong("ban_id");
+                            if (banId != current) {
+                                if (current >= 0) w.write("]}\n");
+                                current = banId;
+                                count++;
+
+                                Timestamp expTs = rs.getTimestamp("expires_at");
+                                w.write("{\"type\":\"BAN\",\"banId\":" + banId +
+                                        ",\"xuid\":" + Json.js(rs.getString("xuid")) +
+                                        ",\"reason\":" + Json.js(rs.getString("reason")) +
+                                        ",\"createdAt\":" + Json.js(rs.getTimestamp("created_at").toInstant().toString()) +
+                                        ",\"expiresAt\":" + (expTs == null ? "null" : Json.js(expTs.toInstant().toString())) +
+                                        ",\"targets\":[");
+                            } else {
+                                w.write(',');
+                            }
+
+                            String type = rs.getString("target_type");
+                            if (type == null) continue;
+                            w.write("{\"type\":" + Json.js(type) + ",\"value\":" + Json.js(rs.getString("target_value")) + "}");
+                        }
+                        if (current >= 0) w.write("]}\n");
+                    }
+                }
+
+                c.commit();
+                w.write("{\"type\":\"END\",\"cursor\":" + cursor + ",\"bans\":" + count + "}\n");
+                w.flush();
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Strong ETag for a ban changes response. Compute it BEFORE running the query:
+     * a write racing the query then only causes one extra full response, never a missed change.
+     */
+    public String banChangesEtag(String sinceIso) {
+        return "\"b-" + bootId + "-" + version.get() + "-" + parseSince(sinceIso).toEpochMilli() + "\"";
+    }
+
+    /**
+     * Strong ETag for a cursor page; same rules as {@link #banChangesEtag(String)}.
+     */
+    public String banChangesCursorEtag(long cursor, int limit) {
+        return "\"b-" + bootId + "-" + version.get() + "-c" + cursor + "-" + clampLimit(limit) + "\"";
+    }
+
+    /**
+     * Loads the newest {@code ban_changes} rows into the change buffer. Call once at startup;
+     * until then every cursor page is read from the DB. Returns the number of buffered changes.
+     */
+    public int loadRecentChanges() throws Exception {
+        List<BanChangeRing.Change> loaded = new ArrayList<>();
+
+        writeLock.lock();
+        try {
+            try (Connection c = db.getConnection();
+                 PreparedStatement ps = c.prepareStatement(
+                         "SELECT seq, ban_id, change_type, xuid, reason, created_at, expires_at, revoked_at, changed_at " +
+                                 "FROM ban_changes ORDER BY seq DESC LIMIT " + CHANGE_BUFFER
+                 );
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) loaded.add(change(rs));
+            }
+            Collections.reverse(loaded);
+
+            // A full read may have cut the log; everything up to the oldest loaded seq comes from the DB.
+            long floor = (loaded.size() < CHANGE_BUFFER) ? 0L : loaded.get(0).seq() - 1;
+            changes.reset(floor, loaded);
+        } finally {
+            writeLock.unlock();
+        }
+        return loaded.size();
+    }
+
+    /**
+     * Buffered changes after {@code cursor} (no DB access); null if the cursor is older than
+     * the buffer. Used by the push stream.
+     */
+    public BanChangeRing.Page bufferedChanges(long cursor, int limit) {
+        return changes.page(cursor, limit);
+    }
+
+    /**
+     * Runs {@code listener} after every committed ban write (on the writing thread; keep it cheap).
+     */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Changes with {@code seq > cursor} in seq order, as UTF-8 JSON. Recent cursors are
+     * answered from the change buffer by concatenating pre-serialized fragments; older ones
+     * use a keyset scan on the primary key. The client stores {@code nextCursor} and polls
+     * again right away while {@code hasMore}.
+     */
+    public byte[] fetchBanChangesByCursorJson(long cursor, int limit) throws Exception {
+        if (cursor < 0) throw new IllegalArgumentException("cursor must be >= 0");
+        int lim = clampLimit(limit);
+
+        BanChangeRing.Page page = changes.page(cursor, lim);
+        if (page == null) page = loadChangesPage(cursor, lim);
+
+        byte[] head = ("{\"serverTime\":" + Json.js(Instant.now().toString()) + ",\"changes\":[")
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] tail = ("],\"nextCursor\":" + page.nextCursor() + ",\"hasMore\":" + page.hasMore() + "}")
+                .getBytes(StandardCharsets.UTF_8);
+
+        int len = head.length + tail.length + Math.max(0, page.changes().size() - 1);
+        for (BanChangeRing.Change ch : page.changes()) len += ch.json().length;
+
+        ByteBuffer out = ByteBuffer.allocate(len).put(head);
+        boolean first = true;
+        for (BanChangeRing.Change ch : page.changes()) {
+            if (!first) out.put((byte) ',');
+            first = false;
+            out.put(ch.json());
+        }
+        return out.put(tail).array();
+    }
+
+    private BanChangeRing.Page loadChangesPage(long cursor, int lim) throws Exception {
+        List<BanChangeRing.Change> page = new ArrayList<>();
+        long next = cursor;
+        boolean hasMore = false;
+
+        try (Connection c = db.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT seq, ban_id, change_type, xuid, reason, created_at, expires_at, revoked_at, changed_at " +
+                             "FROM ban_changes " +
+                             "WHERE seq > ? " +
+                             "ORDER BY seq ASC " +
+                             "LIMIT " + (lim + 1)
+             )) {
+            ps.setLong(1, cursor);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (page.size() == lim) {
+                        hasMore = true;
+                        break;
+                    }
+                    BanChangeRing.Change ch = change(rs);
+                    next = ch.seq();
+                    page.add(ch);
+                }
+            }
+        }
+        return new BanChangeRing.Page(page, next, hasMore);
+    }
+
+    /**
+     * One change object as served by the cursor API; the same bytes go to every client.
+     */
+    private static byte[] changeFragment(long seq, long banId, String type, String xuid, String reason,
+                                         Timestamp createdAt, Timestamp expiresAt, Timestamp revokedAt, Timestamp changedAt) {
+        return ("{" +
+                "\"type\":" + Json.js(type) + ',' +
+                "\"seq\":" + seq + ',' +
+                "\"banId\":" + banId + ',' +
+                "\"xuid\":" + Json.js(xuid) + ',' +
+                "\"reason\":" + Json.js(reason) + ',' +
+                "\"createdAt\":" + Json.js(createdAt.toInstant().toString()) + ',' +
+                "\"expiresAt\":" + (expiresAt == null ? "null" : Json.js(expiresAt.toInstant().toString())) + ',' +
+                "\"revokedAt\":" + (revokedAt == null ? "null" : Json.js(revokedAt.toInstant().toString())) + ',' +
+                "\"updatedAt\":" + Json.js(changedAt.toInstant().toString()) +
+                "}").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static BanChangeRing.Change change(ResultSet rs) throws SQLException {
+        long seq = rs.getLong("seq");
+        String type = rs.getString("change_type");
+        return new BanChangeRing.Change(seq, type, changeFragment(
+                seq,
+                rs.getLong("ban_id"),
+                type,
+                rs.getString("xuid"),
+                rs.getString("reason"),
+                rs.getTimestamp("created_at"),
+                rs.getTimestamp("expires_at"),
+                rs.getTimestamp("revoked_at"),
+                rs.getTimestamp("changed_at")
+        ));
+    }
+
+    public String fetchBanChangesJson(String sinceIso) throws Exception {
+        Instant since = parseSince(sinceIso);
 
         StringBuilder out = new StringBuilder(32_000);
         out.append("{\"serverTime\":").append(Json.js(Instant.now().toString())).append(",\"changes\":[");
@@ -82,57 +569,276 @@ public final class BansRepository {
         return out.toString();
     }
 
+    /**
+     * Checks a reported ban's fields that can be rejected up front (used before journaling).
+     */
+    public static void validateBanNode(JsonNode banNode) {
+        Report.parse(banNode, Instant.now());
+    }
+
     /**
      * Server reports a ban that was already enforced on the game server.
-     * Writes:
-     * - players stub (if missing)
-     * - bans row
-     * - ban_targets rows (xuid + optional ip/hwid)
-     * - ban_events audit trail
+     * Same as {@link #reportServerBans} with a single ban.
+     */
+    public void reportServerBan(String serverKey, JsonNode banNode) throws Exception {
+        reportServerBans(serverKey, List.of(banNode));
+    }
+
+    /**
+     * Server reports bans that were already enforced on the game server, in one transaction.
+     * Writes, each as one batched statement regardless of the number of bans:
+     * - players stubs (if missing)
+     * - bans rows
+     * - ban_targets rows (xuid + optional ip/hwid + CIDR ranges)
+     * - ban_events audit trail (CREATED + ENFORCED)
+     * - ban_changes sync log
      *
+     * Returns the generated ban ids in input order. All bans are validated before anything is
+     * written; one invalid ban rejects the whole batch.
      * Publishes LiveBus invalidate("bans","players").
      */
-    public void reportServerBan(String serverKey, JsonNode banNode) throws Exception {
+    public List<Long> reportServerBans(String serverKey, List<JsonNode> banNodes) throws Exception {
         if (serverKey == null || serverKey.isBlank()) throw new IllegalArgumentException("serverKey missing");
+        if (banNodes.isEmpty()) return List.of();
 
-        String xuid = text(banNode, "xuid");
-        if (xuid == null || xuid.isBlank()) throw new IllegalArgumentException("xuid missing");
+        // Explicit timestamps (ms precision, as stored) let the change log rows be built without reading back.
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        Timestamp nowTs = Timestamp.from(now);
 
-        String reason = text(banNode, "reason");
-        if (reason == null || reason.isBlank()) reason = "No reason";
+        List<Report> reports = new ArrayList<>(banNodes.size());
+        for (int i = 0; i < banNodes.size(); i++) {
+            try {
+                reports.add(Report.parse(banNodes.get(i), now));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException((banNodes.size() == 1) ? e.getMessage() : "bans[" + i + "]: " + e.getMessage());
+            }
+        }
 
-        String ip = text(banNode, "ip");
-        String hwid = text(banNode, "hwid");
+        List<Long> banIds = new ArrayList<>(reports.size());
+        List<BanChangeRing.Change> logged = new ArrayList<>(reports.size());
+
+        writeLock.lock();
+        try (Connection c = db.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = c.prepareStatement(
+                        "INSERT INTO players(xuid, last_name, first_seen_at, last_seen_at) " +
+                                "VALUES(?, 'Unknown', ?, ?) " +
+                                "ON DUPLICATE KEY UPDATE last_seen_at=VALUES(last_seen_at)"
+                )) {
+                    for (Report r : reports) {
+                        ps.setString(1, r.xuid());
+                        ps.setTimestamp(2, nowTs);
+                        ps.setTimestamp(3, nowTs);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+
+                // Ban inserts are serialized on writeLock, so the multi-row insert gets consecutive ids.
+                try (PreparedStatement ps = c.prepareStatement(
+                        "INSERT INTO bans(xuid, reason, created_at, expires_at, revoked_at, updated_at, actor_type, actor_username, actor_server_key) " +
+                                "VALUES(?, ?, ?, ?, NULL, ?, 'SERVER', NULL, ?)",
+                        Statement.RETURN_GENERATED_KEYS
+                )) {
+                    for (Report r : reports) {
+                        ps.setString(1, r.xuid());
+                        ps.setString(2, r.reason());
+                        ps.setTimestamp(3, nowTs);
+                        ps.setTimestamp(4, r.expiresAt());
+                        ps.setTimestamp(5, nowTs);
+                        ps.setString(6, serverKey);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        while (keys.next()) banIds.add(keys.getLong(1));
+                    }
+                    if (banIds.size() != reports.size()) throw new SQLException("ban_id missing");
+                }
 
-        Timestamp expiresAt = null;
-        Long durationSeconds = longOrNull(banNode, "durationSeconds");
-        if (durationSeconds != null && durationSeconds > 0) {
-            expiresAt = Timestamp.from(Instant.now().plusSeconds(durationSeconds));
+                try (PreparedStatement ps = c.prepareStatement(
+                        "INSERT IGNORE INTO ban_targets(ban_id, target_type, target_value, target_net, target_prefix) VALUES(?,?,?,?,?)"
+                )) {
+                    for (int i = 0; i < reports.size(); i++) {
+                        for (BanIndex.Target t : reports.get(i).targets()) {
+                            ps.setLong(1, banIds.get(i));
+                            ps.setString(2, t.type().name());
+                            ps.setString(3, t.value());
+                            if (t.type() == BanIndex.TargetType.CIDR) {
+                                IpPrefixTrie.Prefix p = IpPrefixTrie.parsePrefix(t.value());
+                                ps.setBytes(4, p.net());
+                                ps.setInt(5, p.length());
+                            } else {
+                                ps.setNull(4, Types.VARBINARY);
+                                ps.setNull(5, Types.TINYINT);
+                            }
+                            ps.addBatch();
+                        }
+                    }
+                    ps.executeBatch();
+                }
+
+                try (PreparedStatement ps = c.prepareStatement(
+                        "INSERT INTO ban_events(ban_id, event_type, actor_type, actor_username, actor_server_key, details) VALUES(?,?,'SERVER',NULL,?,?)"
+                )) {
+                    for (long banId : banIds) {
+                        ps.setLong(1, banId);
+                        ps.setString(2, "CREATED");
+                        ps.setString(3, serverKey);
+                        ps.setString(4, null);
+                        ps.addBatch();
+
+                        ps.setLong(1, banId);
+                        ps.setString(2, "ENFORCED");
+                        ps.setString(3, serverKey);
+                        ps.setString(4, "enforced by game server");
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+
+                try (PreparedStatement ps = c.prepareStatement(
+                        "INSERT INTO ban_changes(ban_id, change_type, xuid, reason, created_at, expires_at, revoked_at, changed_at) " +
+                                "VALUES(?, 'BAN_UPSERT', ?, ?, ?, ?, NULL, ?)",
+                        Statement.RETURN_GENERATED_KEYS
+                )) {
+                    for (int i = 0; i < reports.size(); i++) {
+                        Report r = reports.get(i);
+                        ps.setLong(1, banIds.get(i));
+                        ps.setString(2, r.xuid());
+                        ps.setString(3, r.reason());
+                        ps.setTimestamp(4, nowTs);
+                        ps.setTimestamp(5, r.expiresAt());
+                        ps.setTimestamp(6, nowTs);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+
+                    try (ResultSet keys = ps.getGeneratedKeys()) {
+                        for (int i = 0; i < reports.size(); i++) {
+                            if (!keys.next()) throw new SQLException("ban_changes seq missing");
+                            long seq = keys.getLong(1);
+                            Report r = reports.get(i);
+                            logged.add(new BanChangeRing.Change(seq, "BAN_UPSERT", changeFragment(seq, banIds.get(i), "BAN_UPSERT",
+                                    r.xuid(), r.reason(), nowTs, r.expiresAt(), null, nowTs)));
+                        }
+                    }
+                }
+
+                c.commit();
+                for (BanChangeRing.Change change : logged) changes.add(change);
+                for (int i = 0; i < reports.size(); i++) {
+                    Report r = reports.get(i);
+                    // The owner xuid is always indexed; only the extra targets are passed.
+                    List<BanIndex.Target> extra = r.targets().subList(1, r.targets().size());
+                    index.put(new BanIndex.Ban(banIds.get(i), r.xuid(), r.reason(), now,
+                            r.expiresAt() == null ? null : r.expiresAt().toInstant()), extra);
+                    if (r.expiresAt() != null) expiries.schedule(banIds.get(i), r.expiresAt().getTime());
+                }
+                totalBans.addAndGet(banIds.size());
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } finally {
+            writeLock.unlock();
         }
 
+        version.incrementAndGet();
+        LiveBus.publishInvalidate("bans", "players");
+        fireChanged();
+        return banIds;
+    }
+
+    /**
+     * One validated ban of a server report; {@code targets} starts with the owner xuid.
+     */
+    private record Report(String xuid, String reason, Timestamp expiresAt, List<BanIndex.Target> targets) {
+
+        static Report parse(JsonNode banNode, Instant now) {
+            if (banNode == null || !banNode.isObject()) throw new IllegalArgumentException("ban must be an object");
+
+            String xuid = text(banNode, "xuid");
+            if (xuid == null || xuid.isBlank()) throw new IllegalArgumentException("xuid missing");
+
+            String reason = text(banNode, "reason");
+            if (reason == null || reason.isBlank()) reason = "No reason";
+
+            Timestamp expiresAt = null;
+            Long durationSeconds = longOrNull(banNode, "durationSeconds");
+            if (durationSeconds != null && durationSeconds > 0) {
+                expiresAt = Timestamp.from(now.plusSeconds(durationSeconds));
+            }
+
+            List<BanIndex.Target> targets = new ArrayList<>(3);
+            targets.add(new BanIndex.Target(BanIndex.TargetType.XUID, xuid));
+
+            String ip = text(banNode, "ip");
+            if (ip != null && !ip.isBlank() && ip.indexOf('/') < 0) targets.add(new BanIndex.Target(BanIndex.TargetType.IP, ip));
+            String hwid = text(banNode, "hwid");
+            if (hwid != null && !hwid.isBlank()) targets.add(new BanIndex.Target(BanIndex.TargetType.HWID, hwid));
+            for (IpPrefixTrie.Prefix p : ranges(banNode)) {
+                BanIndex.Target t = new BanIndex.Target(BanIndex.TargetType.CIDR, p.canonical());
+                if (!targets.contains(t)) targets.add(t);
+            }
+            return new Report(xuid, reason, expiresAt, List.copyOf(targets));
+        }
+    }
+
+    /**
+     * Admin UI ban. No-op if the player already has an active ban.
+     *
+     * @param cidrs optional IP ranges ({@code 10.0.0.0/8}, {@code 2001:db8::/32}) banned along with the player
+     */
+    public void banByWeb(String xuid, String reason, Timestamp expiresAt, List<String> cidrs) throws Exception {
+        if (xuid == null || xuid.isBlank()) throw new IllegalArgumentException("xuid missing");
+        if (reason == null || reason.isBlank()) reason = "No reason";
+
+        List<IpPrefixTrie.Prefix> ranges = new ArrayList<>();
+        if (cidrs != null) {
+            for (String cidr : cidrs) {
+                if (cidr != null && !cidr.isBlank()) ranges.add(IpPrefixTrie.parsePrefix(cidr));
+            }
+        }
+
+        Instant now = Instant.now();
+        long banId;
+        writeLock.lock();
         try (Connection c = db.getConnection()) {
             c.setAutoCommit(false);
             try {
-                // ensure player exists
                 try (PreparedStatement ps = c.prepareStatement(
-                        "INSERT INTO players(xuid, last_name, first_seen_at, last_seen_at) " +
-                                "VALUES(?, 'Unknown', CURRENT_TIMESTAMP(3), CURRENT_TIMESTAMP(3)) " +
-                                "ON DUPLICATE KEY UPDATE last_seen_at=CURRENT_TIMESTAMP(3)"
+                        "INSERT INTO players(xuid, last_name, last_seen_at) VALUES(?, 'Unknown', CURRENT_TIMESTAMP(3)) " +
+                                "ON DUPLICATE KEY UPDATE xuid=xuid"
                 )) {
                     ps.setString(1, xuid);
                     ps.executeUpdate();
                 }
 
-                long banId;
+                try (PreparedStatement ps = c.prepareStatement(
+                        "SELECT 1 FROM bans WHERE xuid=? AND revoked_at IS NULL AND (expires_at IS NULL OR expires_at > CURRENT_TIMESTAMP(3)) LIMIT 1"
+                )) {
+                    ps.setString(1, xuid);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                            c.commit();
+                            return;
+                        }
+                    }
+                }
+
                 try (PreparedStatement ps = c.prepareStatement(
                         "INSERT INTO bans(xuid, reason, created_at, expires_at, revoked_at, updated_at, actor_type, actor_username, actor_server_key) " +
-                                "VALUES(?, ?, CURRENT_TIMESTAMP(3), ?, NULL, CURRENT_TIMESTAMP(3), 'SERVER', NULL, ?)",
+                                "VALUES(?, ?, CURRENT_TIMESTAMP(3), ?, NULL, CURRENT_TIMESTAMP(3), 'WEB', NULL, NULL)",
                         Statement.RETURN_GENERATED_KEYS
                 )) {
                     ps.setString(1, xuid);
                     ps.setString(2, reason);
                     ps.setTimestamp(3, expiresAt);
-                    ps.setString(4, serverKey);
                     ps.executeUpdate();
 
                     try (ResultSet keys = ps.getGeneratedKeys()) {
@@ -141,50 +847,193 @@ public final class BansRepository {
                     }
                 }
 
-                insertTarget(c, banId, "XUID", xuid);
-                if (ip != null && !ip.isBlank()) insertTarget(c, banId, "IP", ip);
-                if (hwid != null && !hwid.isBlank()) insertTarget(c, banId, "HWID", hwid);
+                for (IpPrefixTrie.Prefix p : ranges) insertRangeTarget(c, banId, p);
 
-                insertEvent(c, banId, "CREATED", "SERVER", null, serverKey, null);
-                insertEvent(c, banId, "ENFORCED", "SERVER", null, serverKey, "enforced by game server");
+                BanChangeRing.Change change = logChange(c, banId, "BAN_UPSERT");
+                c.commit();
+                changes.add(change);
+
+                List<BanIndex.Target> targets = new ArrayList<>(ranges.size());
+                for (IpPrefixTrie.Prefix p : ranges) targets.add(new BanIndex.Target(BanIndex.TargetType.CIDR, p.canonical()));
+                index.put(new BanIndex.Ban(banId, xuid, reason, now, expiresAt == null ? null : expiresAt.toInstant()), targets);
+                if (expiresAt != null) expiries.schedule(banId, expiresAt.getTime());
+                totalBans.incrementAndGet();
+            } catch (Exception e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+
+        version.incrementAndGet();
+        LiveBus.publishInvalidate("bans", "players");
+        fireChanged();
+    }
+
+    /**
+     * Admin UI unban: revokes all currently active bans of the player.
+     */
+    public void revokeActiveByWeb(String xuid) throws Exception {
+        if (xuid == null || xuid.isBlank()) throw new IllegalArgumentException("xuid missing");
+
+        List<Long> revoked = new ArrayList<>(1);
+        List<BanChangeRing.Change> logged = new ArrayList<>(1);
+        writeLock.lock();
+        try (Connection c = db.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = c.prepareStatement(
+                        "SELECT ban_id FROM bans " +
+                                "WHERE xuid=? AND revoked_at IS NULL AND (expires_at IS NULL OR expires_at > CURRENT_TIMESTAMP(3)) " +
+                                "FOR UPDATE"
+                )) {
+                    ps.setString(1, xuid);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) revoked.add(rs.getLong(1));
+                    }
+                }
+
+                if (!revoked.isEmpty()) {
+                    try (PreparedStatement ps = c.prepareStatement(
+                            "UPDATE bans SET revoked_at=CURRENT_TIMESTAMP(3), updated_at=CURRENT_TIMESTAMP(3) WHERE ban_id=?"
+                    )) {
+                        for (long banId : revoked) {
+                            ps.setLong(1, banId);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                    }
+                    for (long banId : revoked) logged.add(logChange(c, banId, "BAN_UPSERT"));
+                }
 
                 c.commit();
+                for (BanChangeRing.Change change : logged) changes.add(change);
+                index.removeByOwner(xuid);
+                for (long banId : revoked) expiries.cancel(banId);
+                revokedBans.addAndGet(revoked.size());
             } catch (Exception e) {
                 c.rollback();
                 throw e;
             } finally {
                 c.setAutoCommit(true);
             }
+        } finally {
+            writeLock.unlock();
         }
 
+        if (revoked.isEmpty()) return;
+
+        version.incrementAndGet();
         LiveBus.publishInvalidate("bans", "players");
+        fireChanged();
     }
 
-    private static void insertTarget(Connection c, long banId, String type, String value) throws Exception {
+    /**
+     * Appends the ban's current state to {@code ban_changes} as {@code type} (BAN_UPSERT or
+     * EXPIRED). Call inside the write transaction, while holding {@link #writeLock}.
+     */
+    private static BanChangeRing.Change logChange(Connection c, long banId, String type) throws Exception {
+        String xuid;
+        String reason;
+        Timestamp createdAt;
+        Timestamp expiresAt;
+        Timestamp revokedAt;
+        Timestamp changedAt;
+
         try (PreparedStatement ps = c.prepareStatement(
-                "INSERT IGNORE INTO ban_targets(ban_id, target_type, target_value) VALUES(?,?,?)"
+                "SELECT xuid, reason, created_at, expires_at, revoked_at, updated_at FROM bans WHERE ban_id=?"
+        )) {
+            ps.setLong(1, banId);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) throw new SQLException("ban " + banId + " missing");
+                xuid = rs.getString("xuid");
+                reason = rs.getString("reason");
+                createdAt = rs.getTimestamp("created_at");
+                expiresAt = rs.getTimestamp("expires_at");
+                revokedAt = rs.getTimestamp("revoked_at");
+                changedAt = rs.getTimestamp("updated_at");
+            }
+        }
+
+        try (PreparedStatement ps = c.prepareStatement(
+                "INSERT INTO ban_changes(ban_id, change_type, xuid, reason, created_at, expires_at, revoked_at, changed_at) " +
+                        "VALUES(?, ?, ?, ?, ?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS
         )) {
             ps.setLong(1, banId);
             ps.setString(2, type);
-            ps.setString(3, value);
+            ps.setString(3, xuid);
+            ps.setString(4, reason);
+            ps.setTimestamp(5, createdAt);
+            ps.setTimestamp(6, expiresAt);
+            ps.setTimestamp(7, revokedAt);
+            ps.setTimestamp(8, changedAt);
             ps.executeUpdate();
+
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                if (!keys.next()) throw new SQLException("ban_changes seq missing");
+                long seq = keys.getLong(1);
+                return new BanChangeRing.Change(seq, type, changeFragment(seq, banId, type, xuid, reason,
+                        createdAt, expiresAt, revokedAt, changedAt));
+            }
+        }
+    }
+
+    private void fireChanged() {
+        for (Runnable r : changeListeners) {
+            try {
+                r.run();
+            } catch (Exception e) {
+                System.out.println("[BackendBridgeService] Ban change listener failed: " + e.getClass().getSimpleName());
+            }
+        }
+    }
+
+    private int clampLimit(int limit) {
+        return (limit <= 0) ? maxRows : Math.min(limit, maxRows);
+    }
+
+    private static Instant parseSince(String sinceIso) {
+        try {
+            return Instant.parse(sinceIso);
+        } catch (Exception e) {
+            return EPOCH;
         }
     }
 
-    private static void insertEvent(Connection c, long banId, String eventType, String actorType, String actorUsername, String actorServerKey, String details) throws Exception {
+    private static void insertRangeTarget(Connection c, long banId, IpPrefixTrie.Prefix p) throws Exception {
         try (PreparedStatement ps = c.prepareStatement(
-                "INSERT INTO ban_events(ban_id, event_type, actor_type, actor_username, actor_server_key, details) VALUES(?,?,?,?,?,?)"
+                "INSERT IGNORE INTO ban_targets(ban_id, target_type, target_value, target_net, target_prefix) VALUES(?,'CIDR',?,?,?)"
         )) {
             ps.setLong(1, banId);
-            ps.setString(2, eventType);
-            ps.setString(3, actorType);
-            ps.setString(4, actorUsername);
-            ps.setString(5, actorServerKey);
-            ps.setString(6, details);
+            ps.setString(2, p.canonical());
+            ps.setBytes(3, p.net());
+            ps.setInt(4, p.length());
             ps.executeUpdate();
         }
     }
 
+    /**
+     * IP ranges of a reported ban: {@code "cidrs":[...]} plus {@code "ip"} when it holds a range.
+     */
+    private static List<IpPrefixTrie.Prefix> ranges(JsonNode banNode) {
+        List<IpPrefixTrie.Prefix> out = new ArrayList<>();
+        String ip = text(banNode, "ip");
+        if (ip != null && ip.indexOf('/') >= 0) out.add(IpPrefixTrie.parsePrefix(ip));
+
+        JsonNode cidrs = (banNode == null) ? null : banNode.get("cidrs");
+        if (cidrs != null && !cidrs.isNull()) {
+            if (!cidrs.isArray()) throw new IllegalArgumentException("cidrs must be an array");
+            for (JsonNode n : cidrs) {
+                if (n != null && !n.isNull() && !n.asText("").isBlank()) out.add(IpPrefixTrie.parsePrefix(n.asText()));
+            }
+        }
+        return out;
+    }
+
     private static String text(JsonNode n, String field) {
         JsonNode v = n == null ? null : n.get(field);
         return (v == null || v.isNull()) ? null : v.asText(null);
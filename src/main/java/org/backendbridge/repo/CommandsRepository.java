@@ -7,7 +7,10 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.time.Instant;
+import java.util.List;
 import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Server command queue.
@@ -15,7 +18,8 @@ import java.util.Locale;
  * <p>Model:</p>
  * - Game server polls {@code GET /api/server/commands/poll?serverKey=...&sinceId=...}
  * - Backend returns commands where acknowledged_at is NULL and id > sinceId
- * - Game server acknowledges via {@code POST /api/server/commands/ack}
+ * - Game server acknowledges via {@code POST /api/server/commands/ack} (one id, a list of ids,
+ *   or cumulatively up to an id), or piggy-backs the acks on its next poll
  *
  * <p>Client response contract (important):</p>
  * The client expects ONLY:
@@ -23,15 +27,79 @@ import java.util.Locale;
  * - commands
  *
  * (No "serverKey" field in the JSON response.)
+ *
+ * <p>The ETag of a poll response is a watermark of the open commands after {@code sinceId}
+ * (count and highest id, one index-only query on idx_cmd_server_ack), so it also moves for
+ * commands inserted directly into {@code server_commands}; idle polls are answered with 304
+ * without reading any rows. Enqueue and ack through this class also wake long-polls parked
+ * on that server key ({@link #onNextChange}).</p>
  */
 public final class CommandsRepository {
 
+    /** Ids per batch ack (one statement). */
+    public static final int MAX_ACK_IDS = 500;
+
     private final Db db;
 
+    private final ConcurrentHashMap<String, Set<Runnable>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * @param commands number of commands in {@code json}
+     */
+    public record Poll(String json, int commands) {}
+
     public CommandsRepository(Db db) {
         this.db = db;
     }
 
+    /**
+     * Strong ETag for a poll response. Compute it BEFORE running the query
+     * (a racing enqueue then costs one extra full response, never a missed command).
+     */
+    public String pollEtag(String serverKey, long sinceId) throws Exception {
+        String sk = (serverKey == null) ? "" : serverKey.trim();
+        long since = Math.max(0L, sinceId);
+
+        try (Connection c = db.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT COUNT(*), COALESCE(MAX(id), 0) FROM server_commands " +
+                             "WHERE server_key=? AND acknowledged_at IS NULL AND id > ?"
+             )) {
+            ps.setString(1, sk);
+            ps.setLong(2, since);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return "\"c-" + rs.getLong(1) + "-" + rs.getLong(2) + "-" + since + "\"";
+            }
+        }
+    }
+
+    /**
+     * Runs {@code onChange} once, on the next enqueue or ack for {@code serverKey}. It runs on
+     * the writing thread, so it should only hand off. Registering the same instance again
+     * while it is pending has no effect. Returns a handle that unregisters it.
+     */
+    public Runnable onNextChange(String serverKey, Runnable onChange) {
+        String sk = (serverKey == null) ? "" : serverKey.trim();
+        // One set per server key, never removed (few keys), so a registration cannot race a removal.
+        Set<Runnable> set = waiters.computeIfAbsent(sk, __ -> ConcurrentHashMap.newKeySet());
+        set.add(onChange);
+        return () -> set.remove(onChange);
+    }
+
+    private void bump(String serverKey) {
+        Set<Runnable> set = waiters.get(serverKey);
+        if (set == null) return;
+        for (Runnable r : set) {
+            if (!set.remove(r)) continue; // another bump got it first
+            try {
+                r.run();
+            } catch (Exception e) {
+                System.out.println("[BackendBridgeService] Command waiter failed: " + e.getClass().getSimpleName());
+            }
+        }
+    }
+
     /**
      * Returns JSON payload for open commands (not acknowledged yet).
      *
@@ -44,6 +112,13 @@ public final class CommandsRepository {
      * }
      */
     public String pollOpenCommandsJson(String serverKey, long sinceId, int limit) throws Exception {
+        return pollOpenCommands(serverKey, sinceId, limit).json();
+    }
+
+    /**
+     * Same as {@link #pollOpenCommandsJson} plus the number of commands returned.
+     */
+    public Poll pollOpenCommands(String serverKey, long sinceId, int limit) throws Exception {
         String sk = (serverKey == null) ? "" : serverKey.trim();
         if (sk.isBlank()) throw new IllegalArgumentException("serverKey missing");
 
@@ -58,7 +133,7 @@ public final class CommandsRepository {
         StringBuilder out = new StringBuilder(16_000);
         out.append("{\"serverTime\":").append(Json.js(Instant.now().toString())).append(",\"commands\":[");
 
-        boolean first = true;
+        int n = 0;
         try (Connection c = db.getConnection();
              PreparedStatement ps = c.prepareStatement(sql)) {
             ps.setString(1, sk);
@@ -66,8 +141,7 @@ public final class CommandsRepository {
 
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    if (!first) out.append(',');
-                    first = false;
+                    if (n++ > 0) out.append(',');
 
                     long id = rs.getLong("id");
                     String type = rs.getString("cmd_type");
@@ -85,25 +159,68 @@ public final class CommandsRepository {
         }
 
         out.append("]}");
-        return out.toString();
+        return new Poll(out.toString(), n);
     }
 
     /**
      * Marks a command as acknowledged.
      */
     public void ackCommand(String serverKey, long id) throws Exception {
+        if (id <= 0) throw new IllegalArgumentException("id missing");
+        ackCommands(serverKey, List.of(id));
+    }
+
+    /**
+     * Marks several commands as acknowledged with one UPDATE. Unknown or already
+     * acknowledged ids are ignored. Returns the number of commands acknowledged.
+     */
+    public int ackCommands(String serverKey, List<Long> ids) throws Exception {
         String sk = (serverKey == null) ? "" : serverKey.trim();
         if (sk.isBlank()) throw new IllegalArgumentException("serverKey missing");
-        if (id <= 0) throw new IllegalArgumentException("id missing");
+        if (ids.isEmpty()) return 0;
+        if (ids.size() > MAX_ACK_IDS) throw new IllegalArgumentException("at most " + MAX_ACK_IDS + " ids per ack");
+
+        StringBuilder in = new StringBuilder(ids.size() * 2);
+        for (long id : ids) {
+            if (id <= 0) throw new IllegalArgumentException("invalid id: " + id);
+            in.append(in.length() == 0 ? "?" : ",?");
+        }
 
         try (Connection c = db.getConnection();
              PreparedStatement ps = c.prepareStatement(
                      "UPDATE server_commands SET acknowledged_at=CURRENT_TIMESTAMP(3) " +
-                             "WHERE server_key=? AND id=? AND acknowledged_at IS NULL"
+                             "WHERE server_key=? AND acknowledged_at IS NULL AND id IN (" + in + ")"
+             )) {
+            int idx = 1;
+            ps.setString(idx++, sk);
+            for (long id : ids) ps.setLong(idx++, id);
+
+            int n = ps.executeUpdate();
+            if (n > 0) bump(sk);
+            return n;
+        }
+    }
+
+    /**
+     * Cumulative ack: marks every open command of the server key with {@code id <= upToId} as
+     * acknowledged (one range UPDATE on idx_cmd_server_ack). Returns the number acknowledged.
+     */
+    public int ackCommandsUpTo(String serverKey, long upToId) throws Exception {
+        String sk = (serverKey == null) ? "" : serverKey.trim();
+        if (sk.isBlank()) throw new IllegalArgumentException("serverKey missing");
+        if (upToId <= 0) throw new IllegalArgumentException("upToId missing");
+
+        try (Connection c = db.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "UPDATE server_commands SET acknowledged_at=CURRENT_TIMESTAMP(3) " +
+                             "WHERE server_key=? AND acknowledged_at IS NULL AND id <= ?"
              )) {
             ps.setString(1, sk);
-            ps.setLong(2, id);
-            ps.executeUpdate();
+            ps.setLong(2, upToId);
+
+            int n = ps.executeUpdate();
+            if (n > 0) bump(sk);
+            return n;
         }
     }
 
@@ -127,9 +244,12 @@ public final class CommandsRepository {
             ps.setString(3, payloadJsonOrNull);
 
             ps.executeUpdate();
+            long id;
             try (ResultSet keys = ps.getGeneratedKeys()) {
-                return keys.next() ? keys.getLong(1) : -1L;
+                id = keys.next() ? keys.getLong(1) : -1L;
             }
+            bump(sk);
+            return id;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,168 @@
+package org.backendbridge.repo;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Binary radix trie of IP prefixes (IPv4 and IPv6 in separate roots) mapping to ban ids.
+ *
+ * <p>A lookup walks the address bit by bit and collects the ids stored on the way, so it
+ * costs at most 32 (IPv4) or 128 (IPv6) steps regardless of how many ranges are banned.
+ * Writes are serialized by the caller ({@link BanIndex}); lookups are lock-free.</p>
+ */
+final class IpPrefixTrie {
+
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+    private static final Pattern IPV6 = Pattern.compile("[0-9a-fA-F:.]+");
+
+    /**
+     * A network prefix with host bits cleared; {@code net} is 4 or 16 bytes.
+     */
+    record Prefix(byte[] net, int length) {
+
+        /**
+         * Canonical text form, e.g. {@code 10.0.0.0/8} or {@code 2001:db8:0:0:0:0:0:0/32}.
+         */
+        String canonical() {
+            try {
+                return InetAddress.getByAddress(net).getHostAddress() + "/" + length;
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final class Node {
+        volatile Node zero;
+        volatile Node one;
+        volatile Set<Long> ids;
+    }
+
+    private final Node v4 = new Node();
+    private final Node v6 = new Node();
+
+    void add(Prefix p, long banId) {
+        Node n = rootFor(p.net());
+        for (int i = 0; i < p.length(); i++) {
+            if (bit(p.net(), i)) {
+                if (n.one == null) n.one = new Node();
+                n = n.one;
+            } else {
+                if (n.zero == null) n.zero = new Node();
+                n = n.zero;
+            }
+        }
+        if (n.ids == null) n.ids = ConcurrentHashMap.newKeySet();
+        n.ids.add(banId);
+    }
+
+    void remove(Prefix p, long banId) {
+        Node n = rootFor(p.net());
+        for (int i = 0; i < p.length() && n != null; i++) {
+            n = bit(p.net(), i) ? n.one : n.zero;
+        }
+        if (n != null && n.ids != null) n.ids.remove(banId);
+    }
+
+    /**
+     * Ban ids of all prefixes containing {@code addr}, most specific first.
+     */
+    List<Long> match(byte[] addr) {
+        List<Long> out = new ArrayList<>(2);
+        Node n = rootFor(addr);
+        int bits = addr.length * 8;
+        for (int i = 0; n != null; i++) {
+            Set<Long> ids = n.ids;
+            if (ids != null && !ids.isEmpty()) out.addAll(0, ids);
+            if (i == bits) break;
+            n = bit(addr, i) ? n.one : n.zero;
+        }
+        return out;
+    }
+
+    void clear() {
+        v4.zero = v4.one = null;
+        v4.ids = null;
+        v6.zero = v6.one = null;
+        v6.ids = null;
+    }
+
+    private Node rootFor(byte[] addr) {
+        return addr.length == 4 ? v4 : v6;
+    }
+
+    private static boolean bit(byte[] b, int i) {
+        return (b[i >>> 3] & (0x80 >>> (i & 7))) != 0;
+    }
+
+    /**
+     * Parses an IP literal (never resolves host names); null if {@code s} is not one.
+     * IPv4-mapped IPv6 addresses come back as 4 bytes.
+     */
+    static byte[] parseAddress(String s) {
+        if (s == null) return null;
+        String v = s.trim();
+        if (v.startsWith("[") && v.endsWith("]")) v = v.substring(1, v.length() - 1);
+        if (v.isEmpty()) return null;
+
+        if (IPV4.matcher(v).matches()) {
+            String[] parts = v.split("\\.");
+            byte[] out = new byte[4];
+            for (int i = 0; i < 4; i++) {
+                int octet = Integer.parseInt(parts[i]);
+                if (octet > 255) return null;
+                out[i] = (byte) octet;
+            }
+            return out;
+        }
+
+        // Only hand IPv6 literals to InetAddress, otherwise it would do a DNS lookup.
+        if (v.indexOf(':') < 0 || !IPV6.matcher(v).matches()) return null;
+        try {
+            return InetAddress.getByName(v).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses {@code addr/len} (a bare address is a full-length prefix). Host bits are cleared.
+     * An IPv4-mapped IPv6 prefix ({@code ::ffff:a.b.c.d/len}, len 96..128) becomes the IPv4
+     * prefix of length {@code len - 96}, like the addresses it matches.
+     */
+    static Prefix parsePrefix(String s) {
+        if (s == null || s.isBlank()) throw new IllegalArgumentException("CIDR missing");
+        String v = s.trim();
+        int slash = v.indexOf('/');
+
+        String addrText = (slash < 0) ? v : v.substring(0, slash);
+        byte[] addr = parseAddress(addrText);
+        if (addr == null) throw new IllegalArgumentException("invalid CIDR: " + v);
+        boolean mapped = addr.length == 4 && addrText.indexOf(':') >= 0;
+
+        int max = addr.length * 8;
+        int len = max;
+        if (slash >= 0) {
+            try {
+                len = Integer.parseInt(v.substring(slash + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid CIDR prefix length: " + v);
+            }
+            if (mapped) {
+                if (len < 96 || len > 128) {
+                    throw new IllegalArgumentException("IPv4-mapped CIDR needs a prefix length of 96-128: " + v);
+                }
+                len -= 96;
+            }
+            if (len < 0 || len > max) throw new IllegalArgumentException("invalid CIDR prefix length: " + v);
+        }
+
+        for (int i = len; i < max; i++) addr[i >>> 3] &= (byte) ~(0x80 >>> (i & 7));
+        return new Prefix(addr, len);
+    }
+}
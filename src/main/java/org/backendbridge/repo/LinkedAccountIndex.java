@@ -0,0 +1,214 @@
+package org.backendbridge.repo;
+
+import org.backendbridge.Db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory correlation of accounts that were seen with the same IP or HWID ("linked accounts").
+ *
+ * <p>Loaded from {@code player_identifiers} at startup and fed by presence ingest afterwards.
+ * Accounts are grouped with a union-find (union by size, path halving), so finding an
+ * account's group costs O(α(n)); each group's members also form a circular list, so listing
+ * them costs O(group size) without any join. A small graph (identifier → accounts,
+ * account → identifiers) keeps the evidence, i.e. which identifiers two accounts share.</p>
+ *
+ * <p>An identifier reported by more than {@link #SHARED_LIMIT} accounts (NAT, CGNAT, shared
+ * PCs) stops linking further accounts; links made before it reached the limit stay.</p>
+ */
+public final class LinkedAccountIndex {
+
+    public enum IdType { IP, HWID }
+
+    public record Identifier(IdType type, String value) {}
+
+    /**
+     * @param shared identifiers both accounts were seen with; empty if the accounts are only
+     *               linked through other accounts of the group
+     */
+    public record Linked(String xuid, List<Identifier> shared) {}
+
+    static final int SHARED_LIMIT = 32;
+
+    private final Map<String, Integer> nodeByXuid = new HashMap<>();
+    private final List<String> xuids = new ArrayList<>();
+    private final List<Set<Identifier>> idsByNode = new ArrayList<>();
+    private final Map<Identifier, Set<Integer>> nodesById = new HashMap<>();
+
+    private int[] parent = new int[1024];
+    private int[] size = new int[1024];
+    /** Next member of the same group (circular). */
+    private int[] next = new int[1024];
+
+    /**
+     * Replaces the index with all rows of {@code player_identifiers}. Returns the number of rows.
+     */
+    public int load(Db db) throws Exception {
+        int n = 0;
+        try (Connection c = db.getConnection();
+             PreparedStatement ps = c.prepareStatement(
+                     "SELECT xuid, type, value FROM player_identifiers ORDER BY first_seen",
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY
+             )) {
+            ps.setFetchSize(Integer.MIN_VALUE); // stream rows (MySQL)
+            try (ResultSet rs = ps.executeQuery()) {
+                synchronized (this) {
+                    clear();
+                    while (rs.next()) {
+                        IdType type = parseType(rs.getString("type"));
+                        if (type != null) add(rs.getString("xuid"), type, rs.getString("value"));
+                        n++;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Records that {@code xuid} was seen with an identifier. Returns false if already known.
+     */
+    public synchronized boolean add(String xuid, IdType type, String value) {
+        if (xuid == null || xuid.isBlank() || value == null || value.isBlank()) return false;
+
+        Identifier id = new Identifier(type, normalize(type, value));
+        int node = node(xuid);
+        if (!idsByNode.get(node).add(id)) return false;
+
+        Set<Integer> nodes = nodesById.computeIfAbsent(id, k -> new HashSet<>(2));
+        if (nodes.size() < SHARED_LIMIT) {
+            // Accounts already on this identifier are one group; linking to any of them suffices.
+            if (!nodes.isEmpty()) union(node, nodes.iterator().next());
+            nodes.add(node);
+        }
+        return true;
+    }
+
+    /**
+     * Other accounts in the group of {@code xuid}, those sharing an identifier directly first,
+     * at most {@code max}.
+     */
+    public synchronized List<Linked> linked(String xuid, int max) {
+        Integer node = nodeByXuid.get(xuid);
+        if (node == null) return List.of();
+
+        Set<Identifier> mine = idsByNode.get(node);
+        List<Linked> direct = new ArrayList<>();
+        List<Linked> indirect = new ArrayList<>();
+        for (int m = next[node]; m != node && direct.size() < max; m = next[m]) {
+            List<Identifier> shared = new ArrayList<>(1);
+            for (Identifier id : idsByNode.get(m)) {
+                if (mine.contains(id)) shared.add(id);
+            }
+            if (shared.isEmpty()) {
+                if (indirect.size() < max) indirect.add(new Linked(xuids.get(m), List.of()));
+            } else {
+                direct.add(new Linked(xuids.get(m), List.copyOf(shared)));
+            }
+        }
+
+        List<Linked> out = new ArrayList<>(Math.min(max, direct.size() + indirect.size()));
+        out.addAll(direct);
+        for (Linked l : indirect) {
+            if (out.size() >= max) break;
+            out.add(l);
+        }
+        return out;
+    }
+
+    /**
+     * Number of accounts in the group of {@code xuid}, including itself (1 if unknown).
+     */
+    public synchronized int groupSize(String xuid) {
+        Integer node = nodeByXuid.get(xuid);
+        return (node == null) ? 1 : size[find(node)];
+    }
+
+    public synchronized boolean sameGroup(String a, String b) {
+        Integer na = nodeByXuid.get(a);
+        Integer nb = nodeByXuid.get(b);
+        return na != null && nb != null && find(na) == find(nb);
+    }
+
+    public synchronized int accounts() {
+        return xuids.size();
+    }
+
+    private int node(String xuid) {
+        Integer existing = nodeByXuid.get(xuid);
+        if (existing != null) return existing;
+
+        int node = xuids.size();
+        if (node == parent.length) {
+            int cap = node * 2;
+            parent = Arrays.copyOf(parent, cap);
+            size = Arrays.copyOf(size, cap);
+            next = Arrays.copyOf(next, cap);
+        }
+        parent[node] = node;
+        size[node] = 1;
+        next[node] = node;
+        xuids.add(xuid);
+        idsByNode.add(new LinkedHashSet<>(2));
+        nodeByXuid.put(xuid, node);
+        return node;
+    }
+
+    private int find(int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    private void union(int a, int b) {
+        int ra = find(a);
+        int rb = find(b);
+        if (ra == rb) return;
+        if (size[ra] < size[rb]) {
+            int t = ra;
+            ra = rb;
+            rb = t;
+        }
+        parent[rb] = ra;
+        size[ra] += size[rb];
+
+        // Splice the two circular member lists.
+        int t = next[ra];
+        next[ra] = next[rb];
+        next[rb] = t;
+    }
+
+    private void clear() {
+        nodeByXuid.clear();
+        xuids.clear();
+        idsByNode.clear();
+        nodesById.clear();
+    }
+
+    static String normalize(IdType type, String value) {
+        String v = value.trim();
+        return (type == IdType.IP) ? v.toLowerCase(Locale.ROOT) : v;
+    }
+
+    private static IdType parseType(String s) {
+        if (s == null) return null;
+        try {
+            return IdType.valueOf(s.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -6,10 +6,15 @@ import org.backendbridge.LiveBus;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Persists online/offline presence reported by the game server.
@@ -17,159 +22,686 @@ import java.util.Set;
  * Final, reliable modes:
  *
  * 1) Snapshot mode (RECOMMENDED):
- *    - Request body contains: {"snapshot": true, "players":[ ...online players... ]}
+ *    - Request body contains: {"serverKey":"...", "snapshot": true, "players":[ ...online players... ]}
  *    - Any player not included in the snapshot will be marked offline in DB.
  *    - This guarantees correct online/offline even without explicit offline events.
  *
  * 2) Event mode:
  *    - Request body contains: {"players":[ {xuid, online:true/false, ...}, ... ]}
  *    - Only updates the players contained in the payload (no global offline marking).
+ *
+ * 3) Delta mode (sequenced, for large servers):
+ *    - Request body contains: {"serverKey":"...", "mode":"delta", "seq": n,
+ *      "joins":[ {xuid, name, ip, hwid}, ... ], "leaves":[ "xuid", ... ]}
+ *    - A snapshot may carry "seq" to set the baseline (default 0); each delta must use
+ *      the previous seq + 1. The same seq again is acknowledged without re-applying (retry).
+ *    - Any other seq, or no baseline (e.g. backend restarted), answers resyncRequired=true
+ *      and the client has to send a full snapshot.
+ *
+ * Presence is tracked per server key in {@code player_presence(server_key, xuid)};
+ * {@code players.online} is 1 while any server lists the player.
+ *
+ * Presence registry:
+ * - the last snapshot of every server key is kept in memory
+ * - the first snapshot of a key (e.g. after a backend restart) takes the full, set-based path:
+ *   the xuids are bulk-loaded into a temporary staging table and joined against
+ *   player_presence to add joins and remove/mark leaves of that server only
+ * - later snapshots are diffed: only joins, leaves and changed name/IP/HWID are written,
+ *   as JDBC batches; an unchanged snapshot does no DB work apart from the identifier refresh
+ * - leaves set online=0 and last_seen_at unless another server key still lists the player
+ *
+ * Identifier history:
+ * - every written IP/HWID is upserted into {@code player_identifiers} (first_seen/last_seen)
+ *   in the same transaction and, after commit, added to the {@link LinkedAccountIndex}
+ * - for players a snapshot or delta keeps online without a write, last_seen of their current
+ *   IP/HWID is bumped by one batched UPDATE, at most every {@link #IDENT_REFRESH_MS} per server key
  */
 public final class PresenceRepository {
 
+    private static final int CHUNK = 500;
+    private static final long IDENT_REFRESH_MS = 60_000;
+    private static final String DEFAULT_SERVER_KEY = "default";
+
+    private static final String UPSERT_ONLINE_SQL =
+            "INSERT INTO players(" +
+                    "xuid, last_name, last_seen_at, online, online_updated_at, last_ip, last_hwid" +
+                    ") VALUES(?, ?, CURRENT_TIMESTAMP(3), 1, CURRENT_TIMESTAMP(3), ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE " +
+                    "last_name=VALUES(last_name), " +
+                    "last_seen_at=CURRENT_TIMESTAMP(3), " +
+                    "online=1, " +
+                    "online_updated_at=CURRENT_TIMESTAMP(3), " +
+                    "last_ip=COALESCE(VALUES(last_ip), players.last_ip), " +
+                    "last_hwid=COALESCE(VALUES(last_hwid), players.last_hwid)";
+
+    // Offline: do NOT bump last_seen_at (otherwise you "see" them while offline).
+    // Stays online while another server still has a presence row.
+    private static final String UPSERT_OFFLINE_SQL =
+            "INSERT INTO players(" +
+                    "xuid, last_name, last_seen_at, online, online_updated_at, last_ip, last_hwid" +
+                    ") VALUES(?, ?, CURRENT_TIMESTAMP(3), 0, CURRENT_TIMESTAMP(3), ?, ?) " +
+                    "ON DUPLICATE KEY UPDATE " +
+                    "last_name=COALESCE(VALUES(last_name), players.last_name), " +
+                    "online=EXISTS(SELECT 1 FROM player_presence pp WHERE pp.xuid=?), " +
+                    "online_updated_at=CURRENT_TIMESTAMP(3), " +
+                    "last_ip=COALESCE(VALUES(last_ip), players.last_ip), " +
+                    "last_hwid=COALESCE(VALUES(last_hwid), players.last_hwid)";
+
+    private static final String PRESENCE_JOIN_SQL =
+            "INSERT IGNORE INTO player_presence(server_key, xuid) VALUES(?, ?)";
+    private static final String PRESENCE_LEAVE_SQL =
+            "DELETE FROM player_presence WHERE server_key=? AND xuid=?";
+
+    private static final String IDENTIFIER_SQL =
+            "INSERT INTO player_identifiers(xuid, type, value, first_seen, last_seen) " +
+                    "VALUES(?, ?, ?, CURRENT_TIMESTAMP(3), CURRENT_TIMESTAMP(3)) " +
+                    "ON DUPLICATE KEY UPDATE last_seen=CURRENT_TIMESTAMP(3)";
+
     private final Db db;
+    private final LinkedAccountIndex links;
+    private final ConcurrentHashMap<String, ServerPresence> servers = new ConcurrentHashMap<>();
 
-    public PresenceRepository(Db db) {
+    public PresenceRepository(Db db, LinkedAccountIndex links) {
         this.db = db;
+        this.links = links;
     }
 
     public void upsertPresencePlayersArray(JsonNode rootOrPlayersArray) throws Exception {
         if (rootOrPlayersArray == null || rootOrPlayersArray.isNull()) return;
 
-        final boolean snapshotMode;
+        final JsonNode fields;
         final JsonNode playersArray;
 
         if (rootOrPlayersArray.isArray()) {
             // Backward compatible: old clients POST just an array.
-            snapshotMode = false;
+            fields = null;
             playersArray = rootOrPlayersArray;
         } else {
-            snapshotMode = boolVal(rootOrPlayersArray, "snapshot", false);
+            fields = rootOrPlayersArray;
             playersArray = rootOrPlayersArray.get("players");
         }
 
         if (playersArray == null || !playersArray.isArray()) return;
 
-        // Collect xuids from snapshot (online set)
-        Set<String> snapshotXuIds = snapshotMode ? new HashSet<>() : Set.of();
+        try (Batch batch = openBatch(null)) {
+            for (JsonNode p : playersArray) batch.add(p, fields);
+            batch.commit(fields);
+        }
+    }
 
-        try (Connection c = db.getConnection()) {
-            c.setAutoCommit(false);
-            try {
-                for (JsonNode p : playersArray) {
-                    String xuid = text(p, "xuid");
-                    if (xuid == null || xuid.isBlank()) continue;
+    /**
+     * Opens a streaming presence write: feed players while they are parsed, then commit.
+     * The connection is taken lazily; closing without commit rolls back.
+     *
+     * @param serverKey key from the request header/query, or null to read it from the body
+     */
+    public Batch openBatch(String serverKey) {
+        return new Batch(serverKey);
+    }
+
+    /**
+     * Resolves the mode from the root fields parsed so far.
+     * Returns null while "snapshot" has not been seen (it may still follow the players array).
+     */
+    public static Boolean snapshotModeOrNull(JsonNode rootFieldsSoFar) {
+        if (rootFieldsSoFar == null || !rootFieldsSoFar.has("snapshot")) return null;
+        return boolVal(rootFieldsSoFar, "snapshot", false);
+    }
+
+    public static boolean isDeltaMode(JsonNode rootFields) {
+        return "delta".equalsIgnoreCase(text(rootFields, "mode"));
+    }
+
+    /**
+     * True for requests whose outcome depends on the per-server sequence (deltas and
+     * snapshots that set a baseline); these are never deferred to the ingest journal.
+     */
+    public static boolean isSequenced(JsonNode rootFields) {
+        return isDeltaMode(rootFields) || (rootFields != null && rootFields.hasNonNull("seq"));
+    }
+
+    /**
+     * Fixes mode and server key when the first player of a streamed body arrives, so players
+     * are applied right away instead of buffered. Up to then a missing "snapshot" means event
+     * mode and a missing key means {@code default}; a "snapshot" or "serverKey" field after
+     * the players that contradicts this is rejected ({@link #check}).
+     */
+    public static final class FieldOrder {
+        private final String headerKey;
+        private Boolean snapshot;
+        private String serverKey;
+
+        /**
+         * @param headerKey key from the request header/query (wins over the body), or null
+         */
+        public FieldOrder(String headerKey) {
+            this.headerKey = (headerKey == null || headerKey.isBlank()) ? null : headerKey.trim();
+        }
+
+        /**
+         * Call for every player with the root fields parsed before it; only the first counts.
+         */
+        public void player(JsonNode rootFieldsSoFar) {
+            if (snapshot != null) return;
+            snapshot = Boolean.TRUE.equals(snapshotModeOrNull(rootFieldsSoFar));
+            serverKey = (headerKey != null) ? headerKey : serverKeyOrNull(rootFieldsSoFar);
+            if (serverKey == null) serverKey = DEFAULT_SERVER_KEY;
+        }
+
+        public boolean snapshot() {
+            return Boolean.TRUE.equals(snapshot);
+        }
+
+        public String serverKey() {
+            return serverKey;
+        }
+
+        /**
+         * @param rootFields all root fields of the request
+         * @throws IllegalArgumentException if a field after the players changed the mode or key
+         */
+        public void check(JsonNode rootFields) {
+            if (snapshot == null) return;
+            if (snapshot != Boolean.TRUE.equals(snapshotModeOrNull(rootFields))) {
+                throw new IllegalArgumentException("\"snapshot\" must come before \"players\"");
+            }
+            String bodyKey = serverKeyOrNull(rootFields);
+            if (headerKey == null && bodyKey != null && !bodyKey.equals(serverKey)) {
+                throw new IllegalArgumentException("\"serverKey\" must come before \"players\"");
+            }
+        }
+    }
+
+    /**
+     * @param resyncRequired client must send a full snapshot before further deltas
+     * @param seq            last applied sequence number of the server key (-1 if none)
+     */
+    public record DeltaResult(boolean resyncRequired, long seq) {}
+
+    /**
+     * One presence ingest transaction. Not thread-safe.
+     *
+     * <p>Players are applied as they arrive; mode and server key are fixed by the first one
+     * (see {@link FieldOrder}), so "snapshot" and "serverKey" must come before the array.
+     * A snapshot batch holds its server key's lock until closed, an event batch from its
+     * commit on, so writes of one server reach the registry in commit order.</p>
+     */
+    public final class Batch implements AutoCloseable {
+        private String serverKey;
+        private final FieldOrder order;
+        private ServerPresence sp;
+        private boolean fullSnapshot;
 
-                    String name = text(p, "name");
+        private Connection c;
+        private PreparedStatement onlinePs;
+        private PreparedStatement offlinePs;
+        private PreparedStatement joinPs;
+        private PreparedStatement leavePs;
+        private PreparedStatement identPs;
+        private int pending;
+        private int writes;
 
-                    // In snapshot mode, any entry is implicitly online unless online=false is explicitly provided.
-                    boolean online = snapshotMode
-                            ? boolVal(p, "online", true)
-                            : boolVal(p, "online", false);
+        private final Map<String, Entry> seen = new LinkedHashMap<>();
+        private final Map<String, Entry> events = new HashMap<>();
+        /** Online state of each xuid written in this batch (see {@link #write}). */
+        private final Map<String, Boolean> writtenOnline = new HashMap<>();
+        private final List<SeenIdentifier> identifiers = new ArrayList<>();
+        private boolean committed;
+        private long identRefreshedMs;
 
-                    String ip = text(p, "ip");
-                    String hwid = text(p, "hwid");
+        private Batch(String serverKey) {
+            this.serverKey = (serverKey == null || serverKey.isBlank()) ? null : serverKey.trim();
+            this.order = new FieldOrder(serverKey);
+        }
+
+        /**
+         * @param rootFieldsSoFar root fields parsed before this element (mode and key)
+         */
+        public void add(JsonNode p, JsonNode rootFieldsSoFar) throws Exception {
+            order.player(rootFieldsSoFar);
+            serverKey = order.serverKey();
+            apply(p, order.snapshot());
+        }
 
-                    upsertPresenceOne(c, xuid, name, online, ip, hwid);
+        /**
+         * @param rootFields all root fields of the request
+         * @throws IllegalArgumentException if "snapshot" or "serverKey" came after the players
+         *                                  and contradict the mode/key they were applied with
+         */
+        public void commit(JsonNode rootFields) throws Exception {
+            order.check(rootFields);
+            boolean snapshotMode = Boolean.TRUE.equals(snapshotModeOrNull(rootFields));
+            if (serverKey == null) serverKey = serverKeyOrNull(rootFields);
+            if (serverKey == null) serverKey = DEFAULT_SERVER_KEY;
 
-                    if (snapshotMode && online) snapshotXuIds.add(xuid);
+            if (snapshotMode) {
+                lockServer();
+                flush();
+                if (fullSnapshot) {
+                    syncFullSnapshot();
+                } else {
+                    List<String> leaves = new ArrayList<>();
+                    for (String xuid : sp.online.keySet()) {
+                        if (!seen.containsKey(xuid)) leaves.add(xuid);
+                    }
+                    markLeaves(leaves);
                 }
+                refreshIdentifiers(seen);
+            } else {
+                // Events also commit under the key's lock, so the registry sees them in commit order.
+                lockServer();
+                flush();
+            }
+
+            if (c != null) c.commit();
+            committed = true;
+            indexIdentifiers();
 
-                if (snapshotMode) {
-                    markAllOthersOffline(c, snapshotXuIds);
+            // Registry follows the DB only after a successful commit.
+            if (snapshotMode) {
+                sp.online = new ConcurrentHashMap<>(seen);
+                sp.seq = longVal(rootFields, "seq", 0L);
+                if (identRefreshedMs > 0) sp.identRefreshedMs = identRefreshedMs;
+            } else if (sp.online != null) {
+                for (Map.Entry<String, Entry> e : events.entrySet()) {
+                    if (e.getValue() == null) sp.online.remove(e.getKey());
+                    else sp.online.put(e.getKey(), e.getValue());
                 }
+            }
 
-                c.commit();
-            } catch (Exception e) {
-                c.rollback();
-                throw e;
-            } finally {
-                c.setAutoCommit(true);
+            if (writes > 0) LiveBus.publishInvalidate("players");
+        }
+
+        /**
+         * Applies a delta body (all root fields, see class doc) in one transaction.
+         */
+        public DeltaResult commitDelta(JsonNode rootFields) throws Exception {
+            if (serverKey == null) serverKey = serverKeyOrNull(rootFields);
+            if (serverKey == null) serverKey = DEFAULT_SERVER_KEY;
+
+            JsonNode seqNode = (rootFields == null) ? null : rootFields.get("seq");
+            if (seqNode == null || !seqNode.canConvertToLong()) {
+                throw new IllegalArgumentException("seq missing");
+            }
+            long seq = seqNode.asLong();
+
+            lockServer();
+            if (fullSnapshot) return new DeltaResult(true, -1L);
+            if (seq == sp.seq) {
+                committed = true;
+                return new DeltaResult(false, seq);
             }
+            if (seq != sp.seq + 1) return new DeltaResult(true, sp.seq);
+
+            Map<String, Entry> joined = new HashMap<>();
+            for (JsonNode j : rootFields.path("joins")) {
+                String xuid = text(j, "xuid");
+                if (xuid == null || xuid.isBlank()) continue;
+
+                Entry cur = new Entry(text(j, "name"), blankToNull(text(j, "ip")), blankToNull(text(j, "hwid")));
+                Entry prev = sp.online.get(xuid);
+                if (prev == null || cur.changedFrom(prev)) write(xuid, cur, true, prev == null);
+                joined.put(xuid, cur.mergedOver(prev));
+            }
+
+            List<String> leaves = new ArrayList<>();
+            for (JsonNode l : rootFields.path("leaves")) {
+                String xuid = l.isObject() ? text(l, "xuid") : l.asText(null);
+                if (xuid == null || xuid.isBlank()) continue;
+                // Leaves are applied after joins: joined and left within one delta ends offline.
+                if (joined.remove(xuid) != null || sp.online.containsKey(xuid)) leaves.add(xuid);
+            }
+
+            flush();
+            markLeaves(leaves);
+            refreshIdentifiers(sp.online);
+
+            if (c != null) c.commit();
+            committed = true;
+            indexIdentifiers();
+
+            sp.online.putAll(joined);
+            for (String xuid : leaves) sp.online.remove(xuid);
+            sp.seq = seq;
+            if (identRefreshedMs > 0) sp.identRefreshedMs = identRefreshedMs;
+
+            if (writes > 0) LiveBus.publishInvalidate("players");
+            return new DeltaResult(false, seq);
         }
 
-        LiveBus.publishInvalidate("players");
-    }
+        private void apply(JsonNode p, boolean snapshotMode) throws Exception {
+            String xuid = text(p, "xuid");
+            if (xuid == null || xuid.isBlank()) return;
 
-    private void upsertPresenceOne(Connection c, String xuid, String name, boolean online, String ip, String hwid) throws Exception {
-        // Strategy:
-        // - If online=true: bump last_seen_at and online_updated_at to CURRENT_TIMESTAMP
-        // - If online=false: do NOT bump last_seen_at (otherwise you "see" them while offline)
-        // - Always update online + online_updated_at to reflect the latest state change
-        // - Only overwrite last_ip/last_hwid when provided (keep previous otherwise)
-        String safeName = (name == null || name.isBlank()) ? "Unknown" : name;
+            // In snapshot mode, any entry is implicitly online unless online=false is explicitly provided.
+            boolean online = snapshotMode
+                    ? boolVal(p, "online", true)
+                    : boolVal(p, "online", false);
 
-        if (online) {
-            try (PreparedStatement ps = c.prepareStatement(
-                    "INSERT INTO players(" +
-                            "xuid, last_name, last_seen_at, online, online_updated_at, last_ip, last_hwid" +
-                            ") VALUES(?, ?, CURRENT_TIMESTAMP(3), 1, CURRENT_TIMESTAMP(3), ?, ?) " +
-                            "ON DUPLICATE KEY UPDATE " +
-                            "last_name=VALUES(last_name), " +
-                            "last_seen_at=CURRENT_TIMESTAMP(3), " +
-                            "online=1, " +
-                            "online_updated_at=CURRENT_TIMESTAMP(3), " +
-                            "last_ip=COALESCE(VALUES(last_ip), players.last_ip), " +
-                            "last_hwid=COALESCE(VALUES(last_hwid), players.last_hwid)"
-            )) {
-                ps.setString(1, xuid);
-                ps.setString(2, safeName);
-                ps.setObject(3, (ip == null || ip.isBlank()) ? null : ip);
-                ps.setObject(4, (hwid == null || hwid.isBlank()) ? null : hwid);
-                ps.executeUpdate();
+            Entry cur = new Entry(text(p, "name"), blankToNull(text(p, "ip")), blankToNull(text(p, "hwid")));
+
+            if (!snapshotMode) {
+                write(xuid, cur, online, true);
+                events.put(xuid, online ? cur : null);
+                return;
+            }
+
+            lockServer();
+            if (!online) {
+                write(xuid, cur, false, true);
+                return;
+            }
+
+            // Full snapshots add their presence rows set-based on commit.
+            Entry prev = fullSnapshot ? null : sp.online.get(xuid);
+            if (prev == null || cur.changedFrom(prev)) write(xuid, cur, true, !fullSnapshot && prev == null);
+            seen.put(xuid, cur.mergedOver(prev));
+        }
+
+        private void lockServer() {
+            if (sp != null) return;
+            sp = servers.computeIfAbsent(serverKey, k -> new ServerPresence());
+            sp.lock.lock();
+            fullSnapshot = (sp.online == null);
+        }
+
+        /**
+         * @param presenceRow also add (online) or remove (offline) this server's presence row
+         */
+        private void write(String xuid, Entry e, boolean online, boolean presenceRow) throws Exception {
+            // flush() runs online statements before offline ones; a xuid that flips within the
+            // request has its earlier statements executed first, so the last event wins as in the registry.
+            Boolean before = writtenOnline.put(xuid, online);
+            if (before != null && before != online) flush();
+
+            String safeName = (e.name == null || e.name.isBlank()) ? "Unknown" : e.name;
+
+            PreparedStatement ps;
+            if (online) {
+                if (onlinePs == null) onlinePs = connection().prepareStatement(UPSERT_ONLINE_SQL);
+                ps = onlinePs;
+            } else {
+                if (offlinePs == null) offlinePs = connection().prepareStatement(UPSERT_OFFLINE_SQL);
+                ps = offlinePs;
+                ps.setString(5, xuid);
             }
-            return;
-        }
-
-        // offline update
-        try (PreparedStatement ps = c.prepareStatement(
-                "INSERT INTO players(" +
-                        "xuid, last_name, last_seen_at, online, online_updated_at, last_ip, last_hwid" +
-                        ") VALUES(?, ?, CURRENT_TIMESTAMP(3), 0, CURRENT_TIMESTAMP(3), ?, ?) " +
-                        "ON DUPLICATE KEY UPDATE " +
-                        "last_name=COALESCE(VALUES(last_name), players.last_name), " +
-                        "online=0, " +
-                        "online_updated_at=CURRENT_TIMESTAMP(3), " +
-                        "last_ip=COALESCE(VALUES(last_ip), players.last_ip), " +
-                        "last_hwid=COALESCE(VALUES(last_hwid), players.last_hwid)"
-        )) {
+
             ps.setString(1, xuid);
             ps.setString(2, safeName);
-            ps.setObject(3, (ip == null || ip.isBlank()) ? null : ip);
-            ps.setObject(4, (hwid == null || hwid.isBlank()) ? null : hwid);
-            ps.executeUpdate();
+            ps.setObject(3, e.ip);
+            ps.setObject(4, e.hwid);
+            ps.addBatch();
+
+            if (presenceRow) {
+                PreparedStatement pps;
+                if (online) {
+                    if (joinPs == null) joinPs = connection().prepareStatement(PRESENCE_JOIN_SQL);
+                    pps = joinPs;
+                } else {
+                    if (leavePs == null) leavePs = connection().prepareStatement(PRESENCE_LEAVE_SQL);
+                    pps = leavePs;
+                }
+                pps.setString(1, serverKey);
+                pps.setString(2, xuid);
+                pps.addBatch();
+            }
+
+            identifier(xuid, LinkedAccountIndex.IdType.IP, e.ip);
+            identifier(xuid, LinkedAccountIndex.IdType.HWID, e.hwid);
+
+            writes++;
+            if (++pending >= CHUNK) flush();
         }
-    }
 
-    private void markAllOthersOffline(Connection c, Set<String> onlineXuIds) throws Exception {
-        // If snapshot is empty => everyone becomes offline.
-        if (onlineXuIds == null || onlineXuIds.isEmpty()) {
-            try (PreparedStatement ps = c.prepareStatement(
-                    "UPDATE players SET online=0, online_updated_at=CURRENT_TIMESTAMP(3) WHERE online=1"
+        private void identifier(String xuid, LinkedAccountIndex.IdType type, String value) throws Exception {
+            if (value == null || value.isBlank()) return;
+            String v = LinkedAccountIndex.normalize(type, value);
+
+            if (identPs == null) identPs = connection().prepareStatement(IDENTIFIER_SQL);
+            identPs.setString(1, xuid);
+            identPs.setString(2, type.name());
+            identPs.setString(3, v);
+            identPs.addBatch();
+            identifiers.add(new SeenIdentifier(xuid, type, v));
+        }
+
+        /**
+         * Bumps last_seen of the online players' current IP/HWID (see class doc). A full
+         * snapshot wrote every player, so it only restarts the interval.
+         */
+        private void refreshIdentifiers(Map<String, Entry> online) throws Exception {
+            long now = System.currentTimeMillis();
+            if (now - sp.identRefreshedMs < IDENT_REFRESH_MS) return;
+            identRefreshedMs = now;
+            if (fullSnapshot) return;
+
+            List<SeenIdentifier> rows = new ArrayList<>(online.size() * 2);
+            for (Map.Entry<String, Entry> e : online.entrySet()) {
+                Entry v = e.getValue();
+                if (v.ip != null) rows.add(new SeenIdentifier(e.getKey(), LinkedAccountIndex.IdType.IP,
+                        LinkedAccountIndex.normalize(LinkedAccountIndex.IdType.IP, v.ip)));
+                if (v.hwid != null) rows.add(new SeenIdentifier(e.getKey(), LinkedAccountIndex.IdType.HWID,
+                        LinkedAccountIndex.normalize(LinkedAccountIndex.IdType.HWID, v.hwid)));
+            }
+
+            for (int from = 0; from < rows.size(); from += CHUNK) {
+                int to = Math.min(rows.size(), from + CHUNK);
+                StringBuilder in = new StringBuilder((to - from) * 8);
+                for (int i = from; i < to; i++) in.append(i == from ? "(?,?,?)" : ",(?,?,?)");
+
+                try (PreparedStatement ps = connection().prepareStatement(
+                        "UPDATE player_identifiers SET last_seen=CURRENT_TIMESTAMP(3) " +
+                                "WHERE (xuid, type, value) IN (" + in + ")"
+                )) {
+                    int idx = 1;
+                    for (int i = from; i < to; i++) {
+                        SeenIdentifier r = rows.get(i);
+                        ps.setString(idx++, r.xuid());
+                        ps.setString(idx++, r.type().name());
+                        ps.setString(idx++, r.value());
+                    }
+                    ps.executeUpdate();
+                }
+            }
+        }
+
+        private void indexIdentifiers() {
+            for (SeenIdentifier i : identifiers) links.add(i.xuid(), i.type(), i.value());
+            identifiers.clear();
+        }
+
+        /**
+         * Order matters: players rows exist before presence and identifier rows reference them,
+         * and presence rows are gone before the offline upsert checks for other servers.
+         */
+        private void flush() throws Exception {
+            if (pending == 0) return;
+            if (onlinePs != null) onlinePs.executeBatch();
+            if (joinPs != null) joinPs.executeBatch();
+            if (leavePs != null) leavePs.executeBatch();
+            if (offlinePs != null) offlinePs.executeBatch();
+            if (identPs != null) identPs.executeBatch();
+            pending = 0;
+        }
+
+        /**
+         * Diff path: removes this server's presence rows of the leavers, then marks those
+         * without any remaining presence row offline.
+         */
+        private void markLeaves(List<String> xuids) throws Exception {
+            for (int from = 0; from < xuids.size(); from += CHUNK) {
+                int to = Math.min(xuids.size(), from + CHUNK);
+                String in = placeholders(to - from);
+
+                try (PreparedStatement ps = connection().prepareStatement(
+                        "DELETE FROM player_presence WHERE server_key=? AND xuid IN (" + in + ")"
+                )) {
+                    int idx = 1;
+                    ps.setString(idx++, serverKey);
+                    for (int i = from; i < to; i++) ps.setString(idx++, xuids.get(i));
+                    ps.executeUpdate();
+                }
+
+                try (PreparedStatement ps = connection().prepareStatement(
+                        "UPDATE players SET online=0, online_updated_at=CURRENT_TIMESTAMP(3), " +
+                                "last_seen_at=CURRENT_TIMESTAMP(3) " +
+                                "WHERE online=1 AND xuid IN (" + in + ") " +
+                                "AND NOT EXISTS (SELECT 1 FROM player_presence pp WHERE pp.xuid=players.xuid)"
+                )) {
+                    int idx = 1;
+                    for (int i = from; i < to; i++) ps.setString(idx++, xuids.get(i));
+                    ps.executeUpdate();
+                }
+                writes++;
+            }
+        }
+
+        /**
+         * Full path, set-based and independent of the player count:
+         * - bulk-load the snapshot xuids into a per-connection temporary staging table
+         * - insert missing presence rows for this server with one INSERT ... SELECT
+         * - mark this server's leavers offline (unless listed elsewhere) with one join UPDATE
+         * - delete this server's stale presence rows with one join DELETE
+         * - clear online flags that no server backs any more (rows from before player_presence)
+         */
+        private void syncFullSnapshot() throws Exception {
+            Connection conn = connection();
+
+            try (Statement st = conn.createStatement()) {
+                st.execute("CREATE TEMPORARY TABLE IF NOT EXISTS presence_stage (" +
+                        "xuid VARCHAR(64) NOT NULL PRIMARY KEY) ENGINE=MEMORY");
+                // DELETE, not TRUNCATE: stays inside the transaction
+                st.executeUpdate("DELETE FROM presence_stage");
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement("INSERT IGNORE INTO presence_stage(xuid) VALUES(?)")) {
+                int n = 0;
+                for (String xuid : seen.keySet()) {
+                    ps.setString(1, xuid);
+                    ps.addBatch();
+                    if (++n % CHUNK == 0) ps.executeBatch();
+                }
+                if (n % CHUNK != 0) ps.executeBatch();
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "INSERT IGNORE INTO player_presence(server_key, xuid) SELECT ?, xuid FROM presence_stage"
             )) {
+                ps.setString(1, serverKey);
                 ps.executeUpdate();
             }
-            return;
+
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE players p " +
+                            "JOIN player_presence pp ON pp.xuid=p.xuid AND pp.server_key=? " +
+                            "LEFT JOIN presence_stage s ON s.xuid=pp.xuid " +
+                            "SET p.online=0, p.online_updated_at=CURRENT_TIMESTAMP(3), p.last_seen_at=CURRENT_TIMESTAMP(3) " +
+                            "WHERE s.xuid IS NULL AND p.online=1 " +
+                            "AND NOT EXISTS (SELECT 1 FROM player_presence o WHERE o.xuid=p.xuid AND o.server_key<>?)"
+            )) {
+                ps.setString(1, serverKey);
+                ps.setString(2, serverKey);
+                ps.executeUpdate();
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "DELETE pp FROM player_presence pp " +
+                            "LEFT JOIN presence_stage s ON s.xuid=pp.xuid " +
+                            "WHERE pp.server_key=? AND s.xuid IS NULL"
+            )) {
+                ps.setString(1, serverKey);
+                ps.executeUpdate();
+            }
+
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("UPDATE players p SET p.online=0, p.online_updated_at=CURRENT_TIMESTAMP(3) " +
+                        "WHERE p.online=1 AND NOT EXISTS (SELECT 1 FROM player_presence pp WHERE pp.xuid=p.xuid)");
+                st.executeUpdate("DELETE FROM presence_stage");
+            }
+            writes++;
         }
 
-        // Build: UPDATE players SET online=0 ... WHERE online=1 AND xuid NOT IN (?,?,...)
-        // We cap the IN-list to avoid pathological payload sizes.
-        List<String> ids = new ArrayList<>(onlineXuIds);
-        int cap = Math.min(ids.size(), 2000);
+        private Connection connection() throws Exception {
+            if (c == null) {
+                c = db.getConnection();
+                c.setAutoCommit(false);
+            }
+            return c;
+        }
 
-        StringBuilder sb = new StringBuilder(64 + cap * 2);
-        sb.append("UPDATE players SET online=0, online_updated_at=CURRENT_TIMESTAMP(3) WHERE online=1 AND xuid NOT IN (");
-        for (int i = 0; i < cap; i++) {
+        @Override
+        public void close() throws SQLException {
+            try {
+                if (c == null) return;
+                try {
+                    if (onlinePs != null) onlinePs.close();
+                    if (offlinePs != null) offlinePs.close();
+                    if (joinPs != null) joinPs.close();
+                    if (leavePs != null) leavePs.close();
+                    if (identPs != null) identPs.close();
+                    if (!committed) c.rollback();
+                    c.setAutoCommit(true);
+                } finally {
+                    c.close();
+                    c = null;
+                }
+            } finally {
+                if (sp != null) sp.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Registry state of one server key. {@code online} is null until the first snapshot committed.
+     */
+    private static final class ServerPresence {
+        private final ReentrantLock lock = new ReentrantLock();
+        private volatile ConcurrentHashMap<String, Entry> online;
+        /** Last applied sequence number; guarded by lock. */
+        private long seq = -1L;
+        /** Last identifier last_seen refresh; guarded by lock. */
+        private long identRefreshedMs;
+    }
+
+    private record SeenIdentifier(String xuid, LinkedAccountIndex.IdType type, String value) {}
+
+    private record Entry(String name, String ip, String hwid) {
+        /** True if this report would change the stored row (missing IP/HWID keep the previous value). */
+        boolean changedFrom(Entry prev) {
+            if (name != null && !name.isBlank() && !name.equals(prev.name)) return true;
+            if (ip != null && !ip.equals(prev.ip)) return true;
+            return hwid != null && !hwid.equals(prev.hwid);
+        }
+
+        Entry mergedOver(Entry prev) {
+            if (prev == null) return this;
+            return new Entry(
+                    (name == null || name.isBlank()) ? prev.name : name,
+                    (ip == null) ? prev.ip : ip,
+                    (hwid == null) ? prev.hwid : hwid
+            );
+        }
+    }
+
+    /**
+     * Server key from the body ({@code "serverKey"}), or null if absent so far.
+     */
+    public static String serverKeyOrNull(JsonNode rootFieldsSoFar) {
+        String k = text(rootFieldsSoFar, "serverKey");
+        return (k == null || k.isBlank()) ? null : k.trim();
+    }
+
+    private static String placeholders(int n) {
+        StringBuilder sb = new StringBuilder(n * 2);
+        for (int i = 0; i < n; i++) {
             if (i > 0) sb.append(',');
             sb.append('?');
         }
-        sb.append(')');
+        return sb.toString();
+    }
 
-        try (PreparedStatement ps = c.prepareStatement(sb.toString())) {
-            int idx = 1;
-            for (int i = 0; i < cap; i++) ps.setString(idx++, ids.get(i));
-            ps.executeUpdate();
-        }
+    private static String blankToNull(String s) {
+        return (s == null || s.isBlank()) ? null : s;
     }
 
     private static String text(JsonNode n, String field) {
@@ -177,6 +709,12 @@ public final class PresenceRepository {
         return (v == null || v.isNull()) ? null : v.asText(null);
     }
 
+    private static long longVal(JsonNode n, String field, long defaultValue) {
+        JsonNode v = (n == null) ? null : n.get(field);
+        if (v == null || v.isNull()) return defaultValue;
+        return v.asLong(defaultValue);
+    }
+
     private static boolean boolVal(JsonNode n, String field, boolean defaultValue) {
         JsonNode v = (n == null) ? null : n.get(field);
         if (v == null || v.isNull()) return defaultValue;
@@ -186,4 +724,4 @@ public final class PresenceRepository {
         if (s.isBlank()) return defaultValue;
         return "true".equalsIgnoreCase(s) || "1".equals(s) || "yes".equalsIgnoreCase(s);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,226 @@
+package org.backendbridge.repo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.backendbridge.Db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind aggregation in front of {@link StatsRepository}.
+ *
+ * <p>Model:</p>
+ * - each request stages its players locally ({@link Staged}) and merges them on commit,
+ *   so a request that fails half-way never leaves partial deltas behind
+ * - deltas are summed per xuid in a ConcurrentHashMap (per-bin locking, no global lock);
+ *   the latest non-blank name wins
+ * - a single flusher drains the map into one batched transaction every
+ *   {@code flushIntervalMs}, or earlier once {@code maxPendingPlayers} xuids are pending
+ * - a flush that fails with a retryable error (connection lost, deadlock, timeout) merges the
+ *   drained deltas back, nothing is lost while MySQL is down
+ * - any other failure is retried player by player, so a row MySQL rejects is dropped (and
+ *   counted) instead of blocking every later flush; xuid and name are checked against the
+ *   column sizes when staged, so this should not happen
+ * - {@link #close()} flushes the remainder (called from the shutdown hook)
+ *
+ * <p>A player reporting every few seconds costs one row write per flush window.</p>
+ */
+public final class StatsAggregator implements AutoCloseable {
+
+    /** Column sizes of players.xuid and players.last_name. */
+    private static final int MAX_XUID_LENGTH = 64;
+    private static final int MAX_NAME_LENGTH = 32;
+
+    private final StatsRepository repo;
+    private final int maxPendingPlayers;
+
+    private final ConcurrentHashMap<String, Delta> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final AtomicLong droppedPlayers = new AtomicLong();
+    private final Object flushLock = new Object();
+    private final ScheduledExecutorService flusher;
+
+    public StatsAggregator(StatsRepository repo, long flushIntervalMs, int maxPendingPlayers) {
+        this.repo = repo;
+        this.maxPendingPlayers = Math.max(1, maxPendingPlayers);
+
+        long interval = Math.max(100L, flushIntervalMs);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bb-stats-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts staging one request's players. Nothing is visible to the flusher until commit.
+     */
+    public Staged stage() {
+        return new Staged();
+    }
+
+    public int pendingPlayers() {
+        return pending.size();
+    }
+
+    /** Player deltas discarded because MySQL rejected their row. */
+    public long droppedPlayers() {
+        return droppedPlayers.get();
+    }
+
+    /**
+     * Drains all pending deltas into one batched transaction.
+     */
+    public void flush() throws Exception {
+        synchronized (flushLock) {
+            flushQueued.set(false);
+            if (pending.isEmpty()) return;
+
+            List<Map.Entry<String, Delta>> drained = new ArrayList<>(pending.size());
+            for (String xuid : pending.keySet()) {
+                Delta d = pending.remove(xuid);
+                if (d != null) drained.add(Map.entry(xuid, d));
+            }
+
+            try {
+                write(drained);
+            } catch (Exception e) {
+                if (Db.isRetryable(e)) {
+                    requeue(drained);
+                    throw e;
+                }
+                writeEach(drained);
+            }
+        }
+    }
+
+    /**
+     * Isolates the rows a failed batch choked on: one transaction per player, rejected ones
+     * are dropped. A retryable error re-queues the players not written yet.
+     */
+    private void writeEach(List<Map.Entry<String, Delta>> drained) throws Exception {
+        for (int i = 0; i < drained.size(); i++) {
+            Map.Entry<String, Delta> e = drained.get(i);
+            try {
+                write(List.of(e));
+            } catch (Exception ex) {
+                if (Db.isRetryable(ex)) {
+                    requeue(drained.subList(i, drained.size()));
+                    throw ex;
+                }
+                droppedPlayers.incrementAndGet();
+                System.out.println("[BackendBridgeService] Stats for " + e.getKey() + " dropped: "
+                        + ex.getClass().getSimpleName() + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    private void write(List<Map.Entry<String, Delta>> entries) throws Exception {
+        try (StatsRepository.Batch batch = repo.openBatch()) {
+            for (Map.Entry<String, Delta> e : entries) {
+                Delta d = e.getValue();
+                batch.add(e.getKey(), d.name, d.playtime, d.kills, d.deaths);
+            }
+            batch.commit();
+        }
+    }
+
+    private void requeue(List<Map.Entry<String, Delta>> entries) {
+        // Newer deltas that arrived meanwhile keep their name.
+        for (Map.Entry<String, Delta> en : entries) {
+            pending.merge(en.getKey(), en.getValue(), (newer, older) -> older.plus(newer));
+        }
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try { flusher.awaitTermination(5, TimeUnit.SECONDS); } catch (InterruptedException ignored) {}
+        flushQuietly();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.out.println("[BackendBridgeService] Stats flush failed (" + pending.size() + " players kept): "
+                    + e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    private void merge(Map<String, Delta> deltas) {
+        for (Map.Entry<String, Delta> e : deltas.entrySet()) {
+            pending.merge(e.getKey(), e.getValue(), Delta::plus);
+        }
+        if (pending.size() >= maxPendingPlayers && flushQueued.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flushQuietly);
+            } catch (Exception rejected) {
+                flushQueued.set(false);
+            }
+        }
+    }
+
+    /**
+     * Per-request staging area. Not thread-safe.
+     */
+    public final class Staged {
+        private final Map<String, Delta> local = new HashMap<>();
+
+        private Staged() {}
+
+        /**
+         * @throws IllegalArgumentException if the xuid does not fit the players table
+         */
+        public void add(JsonNode p) {
+            String xuid = text(p, "xuid");
+            if (xuid == null || xuid.isBlank()) return;
+            if (xuid.length() > MAX_XUID_LENGTH) throw new IllegalArgumentException("xuid too long (max " + MAX_XUID_LENGTH + ")");
+
+            String name = text(p, "name");
+            if (name != null && name.length() > MAX_NAME_LENGTH) name = name.substring(0, MAX_NAME_LENGTH);
+
+            // Defensive clamping (server deltas should never be negative)
+            Delta d = new Delta(
+                    name,
+                    Math.max(0L, longVal(p, "playtimeDeltaSeconds")),
+                    Math.max(0L, longVal(p, "killsDelta")),
+                    Math.max(0L, longVal(p, "deathsDelta"))
+            );
+            local.merge(xuid, d, Delta::plus);
+        }
+
+        public void commit() {
+            merge(local);
+            local.clear();
+        }
+    }
+
+    private record Delta(String name, long playtime, long kills, long deaths) {
+        /** Sums counters; {@code newer}'s name wins unless blank. */
+        Delta plus(Delta newer) {
+            String n = (newer.name == null || newer.name.isBlank()) ? name : newer.name;
+            return new Delta(n, playtime + newer.playtime, kills + newer.kills, deaths + newer.deaths);
+        }
+    }
+
+    private static String text(JsonNode n, String field) {
+        JsonNode v = (n == null) ? null : n.get(field);
+        return (v == null || v.isNull()) ? null : v.asText(null);
+    }
+
+    private static long longVal(JsonNode n, String field) {
+        JsonNode v = (n == null) ? null : n.get(field);
+        if (v == null || v.isNull()) return 0L;
+        return v.asLong(0L);
+    }
+}
@@ -6,6 +6,7 @@ import org.backendbridge.LiveBus;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 
 /**
  * Persists player stats deltas reported by the game server.
@@ -25,13 +26,35 @@ import java.sql.PreparedStatement;
  * - Upserts player basic info into {@code players}
  * - Adds deltas into {@code player_stats} using an atomic upsert increment
  * - Publishes a LiveBus invalidation for "players" so the Admin UI can refresh
+ *
+ * <p>Writes are JDBC-batched: each {@link Batch} reuses one statement per table and flushes
+ * every {@code chunkSize} players. With {@code rewriteBatchedStatements=true} (set in {@link Db})
+ * Connector/J sends each flush as one multi-row {@code INSERT ... ON DUPLICATE KEY UPDATE},
+ * so a batch costs 2 round-trips per chunk instead of 2 per player.</p>
  */
 public final class StatsRepository {
 
+    private static final String UPSERT_PLAYER_SQL =
+            "INSERT INTO players(xuid, last_name, last_seen_at) VALUES(?, ?, CURRENT_TIMESTAMP(3)) " +
+                    "ON DUPLICATE KEY UPDATE " +
+                    "last_name=VALUES(last_name), " +
+                    "last_seen_at=CURRENT_TIMESTAMP(3)";
+
+    private static final String UPSERT_STATS_SQL =
+            "INSERT INTO player_stats(xuid, playtime_seconds, kills, deaths, updated_at) " +
+                    "VALUES(?, ?, ?, ?, CURRENT_TIMESTAMP(3)) " +
+                    "ON DUPLICATE KEY UPDATE " +
+                    "playtime_seconds = player_stats.playtime_seconds + VALUES(playtime_seconds), " +
+                    "kills = player_stats.kills + VALUES(kills), " +
+                    "deaths = player_stats.deaths + VALUES(deaths), " +
+                    "updated_at = CURRENT_TIMESTAMP(3)";
+
     private final Db db;
+    private final int chunkSize;
 
-    public StatsRepository(Db db) {
+    public StatsRepository(Db db, int chunkSize) {
         this.db = db;
+        this.chunkSize = Math.max(1, chunkSize);
     }
 
     /**
@@ -40,73 +63,104 @@ public final class StatsRepository {
     public void persistStatsPlayersArray(JsonNode playersArray) throws Exception {
         if (playersArray == null || !playersArray.isArray()) return;
 
-        try (Connection c = db.getConnection()) {
-            c.setAutoCommit(false);
-            try {
-                for (JsonNode p : playersArray) {
-                    String xuid = text(p, "xuid");
-                    if (xuid == null || xuid.isBlank()) continue;
-
-                    String name = text(p, "name");
-                    long pt = longVal(p, "playtimeDeltaSeconds");
-                    long k = longVal(p, "killsDelta");
-                    long d = longVal(p, "deathsDelta");
-
-                    // Defensive clamping (server deltas should never be negative)
-                    if (pt < 0) pt = 0;
-                    if (k < 0) k = 0;
-                    if (d < 0) d = 0;
-
-                    upsertPlayer(c, xuid, name);
-                    upsertStatsAddByXuid(c, xuid, pt, k, d);
-                }
-                c.commit();
-            } catch (Exception e) {
-                c.rollback();
-                throw e;
-            } finally {
-                c.setAutoCommit(true);
-            }
+        try (Batch batch = openBatch()) {
+            for (JsonNode p : playersArray) batch.add(p);
+            batch.commit();
         }
-
-        // Live update Admin UI
-        LiveBus.publishInvalidate("players");
     }
 
     /**
-     * Updates player metadata and last seen timestamp.
+     * Opens a streaming write: feed players one by one while they are parsed, then commit.
+     * The connection is taken lazily on the first valid record; closing without commit rolls back.
      */
-    private void upsertPlayer(Connection c, String xuid, String name) throws Exception {
-        try (PreparedStatement ps = c.prepareStatement(
-                "INSERT INTO players(xuid, last_name, last_seen_at) VALUES(?, ?, CURRENT_TIMESTAMP(3)) " +
-                        "ON DUPLICATE KEY UPDATE " +
-                        "last_name=VALUES(last_name), " +
-                        "last_seen_at=CURRENT_TIMESTAMP(3)"
-        )) {
-            ps.setString(1, xuid);
-            ps.setString(2, (name == null || name.isBlank()) ? "Unknown" : name);
-            ps.executeUpdate();
-        }
+    public Batch openBatch() {
+        return new Batch();
     }
 
     /**
-     * Adds deltas to the player's aggregated stats row (atomic upsert).
+     * One stats ingest transaction. Not thread-safe.
      */
-    private void upsertStatsAddByXuid(Connection c, String xuid, long pt, long k, long d) throws Exception {
-        try (PreparedStatement ps = c.prepareStatement(
-                "INSERT INTO player_stats(xuid, playtime_seconds, kills, deaths, updated_at) " +
-                        "VALUES(?, ?, ?, ?, CURRENT_TIMESTAMP(3)) " +
-                        "ON DUPLICATE KEY UPDATE " +
-                        "playtime_seconds = player_stats.playtime_seconds + VALUES(playtime_seconds), " +
-                        "kills = player_stats.kills + VALUES(kills), " +
-                        "deaths = player_stats.deaths + VALUES(deaths), " +
-                        "updated_at = CURRENT_TIMESTAMP(3)"
-        )) {
-            ps.setString(1, xuid);
-            ps.setLong(2, pt);
-            ps.setLong(3, k);
-            ps.setLong(4, d);
-            ps.executeUpdate();
+    public final class Batch implements AutoCloseable {
+        private Connection c;
+        private PreparedStatement playerPs;
+        private PreparedStatement statsPs;
+        private int pending;
+        private int players;
+        private boolean committed;
+
+        private Batch() {}
+
+        public void add(JsonNode p) throws Exception {
+            String xuid = text(p, "xuid");
+            if (xuid == null || xuid.isBlank()) return;
+
+            // Defensive clamping (server deltas should never be negative)
+            add(xuid,
+                    text(p, "name"),
+                    Math.max(0L, longVal(p, "playtimeDeltaSeconds")),
+                    Math.max(0L, longVal(p, "killsDelta")),
+                    Math.max(0L, longVal(p, "deathsDelta")));
+        }
+
+        public void add(String xuid, String name, long playtimeDelta, long killsDelta, long deathsDelta) throws Exception {
+            if (c == null) {
+                c = db.getConnection();
+                c.setAutoCommit(false);
+                playerPs = c.prepareStatement(UPSERT_PLAYER_SQL);
+                statsPs = c.prepareStatement(UPSERT_STATS_SQL);
+            }
+
+            playerPs.setString(1, xuid);
+            playerPs.setString(2, (name == null || name.isBlank()) ? "Unknown" : name);
+            playerPs.addBatch();
+
+            statsPs.setString(1, xuid);
+            statsPs.setLong(2, playtimeDelta);
+            statsPs.setLong(3, killsDelta);
+            statsPs.setLong(4, deathsDelta);
+            statsPs.addBatch();
+
+            players++;
+            if (++pending >= chunkSize) flush();
+        }
+
+        /**
+         * Players first: player_stats references players(xuid).
+         */
+        private void flush() throws Exception {
+            if (pending == 0) return;
+            playerPs.executeBatch();
+            statsPs.executeBatch();
+            pending = 0;
+        }
+
+        public int players() {
+            return players;
+        }
+
+        public void commit() throws Exception {
+            if (c != null) {
+                flush();
+                c.commit();
+            }
+            committed = true;
+
+            // Live update Admin UI
+            if (players > 0) LiveBus.publishInvalidate("players");
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (c == null) return;
+            try {
+                if (playerPs != null) playerPs.close();
+                if (statsPs != null) statsPs.close();
+                if (!committed) c.rollback();
+                c.setAutoCommit(true);
+            } finally {
+                c.close();
+                c = null;
+            }
         }
     }
 
@@ -120,4 +174,4 @@ public final class StatsRepository {
         if (v == null || v.isNull()) return 0L;
         return v.asLong(0L);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,151 @@
+package org.backendbridge.repo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical timer wheel of ids with a due time (ban expiries).
+ *
+ * <p>Four levels of 64 slots; a slot on level {@code l} covers {@code 64^l} ticks. An id is
+ * filed on the lowest level whose range reaches its due tick and moves down a level
+ * (cascades) when the wheel below wraps, so scheduling, cancelling and advancing one tick
+ * are O(1) regardless of how many ids are pending. Ids further out than the top level
+ * ({@code 64^4} ticks, about 194 days at one second) wait in an overflow list that is
+ * re-filed whenever the top level cascades.</p>
+ *
+ * <p>Cancellation is lazy: the id is dropped from {@link #due} and its slot entry is
+ * skipped when reached. Not thread-safe on its own; all methods are synchronized.</p>
+ */
+final class TimerWheel {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private record Entry(long id, long dueTick) {}
+
+    private final long tickMs;
+    /** wheels.get(level).get(slot) */
+    private final List<List<List<Entry>>> wheels;
+    private final List<Entry> overflow = new ArrayList<>();
+    private final List<Entry> ready = new ArrayList<>();
+
+    /** Pending ids and their due tick; the authority for lazily cancelled entries. */
+    private final Map<Long, Long> due = new HashMap<>();
+
+    /** Last processed tick. */
+    private long now;
+
+    TimerWheel(long tickMs, long startMs) {
+        this.tickMs = Math.max(1L, tickMs);
+        this.now = startMs / this.tickMs;
+        this.wheels = new ArrayList<>(LEVELS);
+        for (int l = 0; l < LEVELS; l++) {
+            List<List<Entry>> level = new ArrayList<>(SLOTS);
+            for (int i = 0; i < SLOTS; i++) level.add(new ArrayList<>(0));
+            wheels.add(level);
+        }
+    }
+
+    /**
+     * Schedules (or reschedules) {@code id}. It is returned by the first {@link #advance}
+     * that reaches a tick at or after {@code dueMs}.
+     */
+    synchronized void schedule(long id, long dueMs) {
+        long dueTick = Math.floorDiv(dueMs + tickMs - 1, tickMs);
+        due.put(id, dueTick);
+        file(new Entry(id, dueTick));
+    }
+
+    synchronized void cancel(long id) {
+        due.remove(id);
+    }
+
+    synchronized int size() {
+        return due.size();
+    }
+
+    /**
+     * Moves the wheel to {@code nowMs} and returns the ids that became due, in due order
+     * (ids due on the same tick in no particular order).
+     */
+    synchronized List<Long> advance(long nowMs) {
+        long target = nowMs / tickMs;
+        List<Long> out = new ArrayList<>();
+        drainReady(out);
+
+        while (now < target) {
+            now++;
+            cascade();
+            drainReady(out); // cascaded entries due on exactly this tick
+            List<Entry> slot = wheels.get(0).get((int) (now & MASK));
+            if (slot.isEmpty()) continue;
+            List<Entry> fired = new ArrayList<>(slot);
+            slot.clear();
+            collect(fired, out);
+        }
+        return out;
+    }
+
+    private void drainReady(List<Long> out) {
+        if (ready.isEmpty()) return;
+        List<Entry> r = new ArrayList<>(ready);
+        ready.clear();
+        collect(r, out);
+    }
+
+    private void collect(List<Entry> entries, List<Long> out) {
+        for (Entry e : entries) {
+            Long d = due.get(e.id());
+            if (d == null || d != e.dueTick()) continue; // cancelled or rescheduled
+            due.remove(e.id());
+            out.add(e.id());
+        }
+    }
+
+    /**
+     * When a level wraps, re-files the next slot of the level above (top level first, so
+     * entries can fall through several levels on the same tick).
+     */
+    private void cascade() {
+        int wrapped = 0;
+        for (int l = 1; l < LEVELS && ((now >>> (BITS * l)) << (BITS * l)) == now; l++) wrapped = l;
+        if (wrapped == LEVELS - 1 && ((now >>> (BITS * LEVELS)) << (BITS * LEVELS)) == now && !overflow.isEmpty()) {
+            List<Entry> far = new ArrayList<>(overflow);
+            overflow.clear();
+            refile(far);
+        }
+        for (int l = wrapped; l >= 1; l--) {
+            List<Entry> slot = wheels.get(l).get((int) ((now >>> (BITS * l)) & MASK));
+            if (slot.isEmpty()) continue;
+            List<Entry> moved = new ArrayList<>(slot);
+            slot.clear();
+            refile(moved);
+        }
+    }
+
+    private void refile(List<Entry> entries) {
+        for (Entry e : entries) {
+            Long d = due.get(e.id());
+            if (d != null && d == e.dueTick()) file(e);
+        }
+    }
+
+    private void file(Entry e) {
+        long delta = e.dueTick() - now;
+        if (delta <= 0) {
+            ready.add(e);
+            return;
+        }
+        for (int l = 0; l < LEVELS; l++) {
+            if (delta < (1L << (BITS * (l + 1)))) {
+                wheels.get(l).get((int) ((e.dueTick() >>> (BITS * l)) & MASK)).add(e);
+                return;
+            }
+        }
+        overflow.add(e);
+    }
+}
@@ -0,0 +1,271 @@
+(function(){
+  const toastEl = document.getElementById('bbToast');
+  function toast(msg){
+    if(!toastEl) return;
+    toastEl.textContent = msg;
+    toastEl.classList.add('on');
+    clearTimeout(toastEl._t);
+    toastEl._t = setTimeout(() => toastEl.classList.remove('on'), 1200);
+  }
+
+  // -------- Global time formatting for any element with [data-iso] --------
+  function fmtDateTime(iso){
+    if(!iso) return '';
+    const d = new Date(iso);
+    if(Number.isNaN(d.getTime())) return String(iso);
+
+    const lang = (document.documentElement.getAttribute('data-lang') || 'de').toLowerCase();
+    const tz = (lang === 'de') ? 'Europe/Berlin' : 'America/New_York';
+    const locale = (lang === 'de') ? 'de-DE' : 'en-US';
+
+    const dtf = new Intl.DateTimeFormat(locale, {
+      timeZone: tz,
+      year: 'numeric',
+      month: '2-digit',
+      day: '2-digit',
+      hour: '2-digit',
+      minute: '2-digit',
+      hour12: (lang !== 'de')
+    });
+
+    const parts = dtf.formatToParts(d);
+    const get = (type) => (parts.find(p => p.type === type)?.value || '');
+
+    const yyyy = get('year');
+    const MM = get('month');
+    const dd = get('day');
+    const hh = get('hour');
+    const mm = get('minute');
+    const ap = get('dayPeriod');
+
+    if(lang === 'de') return `${dd}.${MM}.${yyyy} ${hh}:${mm}`;
+    return `${yyyy}.${MM}.${dd} ${hh}:${mm} ${ap}`;
+  }
+
+  function formatAllIso(){
+    document.querySelectorAll('[data-iso]').forEach(el => {
+      try{
+        const iso = el.getAttribute('data-iso') || '';
+        if(!iso) return;
+        el.textContent = fmtDateTime(iso);
+      }catch(e){}
+    });
+  }
+
+  // Reveal
+  const revealEls = Array.from(document.querySelectorAll('.bb-reveal, .card, .hero, .bb-loginCard'));
+  if('IntersectionObserver' in window){
+    const io = new IntersectionObserver((entries) => {
+      for(const e of entries){
+        if(e.isIntersecting){
+          e.target.classList.add('in');
+          io.unobserve(e.target);
+        }
+      }
+    }, { threshold: 0.08 });
+    revealEls.forEach((el) => {
+      if(!el.classList.contains('bb-reveal')) el.classList.add('bb-reveal');
+      el.style.transitionDelay = '0ms';
+      io.observe(el);
+    });
+  }else{
+    revealEls.forEach(el => el.classList.add('in'));
+  }
+
+  // Apply time formatting
+  formatAllIso();
+
+  // Tables: sorting + filter + CSV
+  function detectType(sample){
+    const s = (sample ?? '').trim();
+    if(!s) return 'text';
+    if (/^-?\d+(?:[.,]\d+)?$/.test(s)) return 'num';
+    if (/^\d{4}-\d{2}-\d{2}T\d{2}:\d{2}:\d{2}/.test(s)) return 'date';
+    return 'text';
+  }
+  function parseValue(type, td){
+    if(!td) return '';
+    const ds = td.getAttribute('data-sort');
+    if(ds != null && ds !== ''){
+      const n = Number(ds);
+      if(Number.isFinite(n)) return n;
+      const t = Date.parse(ds);
+      if(Number.isFinite(t)) return t;
+      return ds.toLowerCase();
+    }
+    const s = (td.textContent ?? '').trim();
+    if(type === 'num'){
+      const n = Number(s.replace(',', '.'));
+      return Number.isFinite(n) ? n : -Infinity;
+    }
+    if(type === 'date'){
+      const t = Date.parse(s);
+      return Number.isFinite(t) ? t : -Infinity;
+    }
+    return s.toLowerCase();
+  }
+  function toCsv(table){
+    const rows = Array.from(table.querySelectorAll('tr'))
+      .filter(tr => tr.style.display !== 'none');
+    return rows.map(tr => {
+      const cells = Array.from(tr.children).map(td => {
+        const txt = (td.textContent ?? '').trim().replace(/\s+/g,' ');
+        const escaped = txt.replace(/"/g, '""');
+        return '"' + escaped + '"';
+      });
+      return cells.join(',');
+    }).join('\n');
+  }
+  function initTable(table){
+    const tbody = table.querySelector('tbody');
+    const thead = table.querySelector('thead');
+    if(!tbody || !thead) return;
+
+    const headerCells = Array.from(thead.querySelectorAll('th'));
+    headerCells.forEach((th, idx) => {
+      th.addEventListener('click', () => {
+        const rows = Array.from(tbody.querySelectorAll('tr')).filter(tr => tr.style.display !== 'none');
+
+        let sample = '';
+        for(const tr of rows){
+          const td = tr.children[idx];
+          const t = (td?.textContent ?? '').trim();
+          if(t){ sample = t; break; }
+        }
+        const type = detectType(sample);
+
+        const currentlyAsc = th.classList.contains('sort-asc');
+        headerCells.forEach(h => { h.classList.remove('sort-asc'); h.classList.remove('sort-desc'); });
+
+        const asc = !currentlyAsc;
+        th.classList.add(asc ? 'sort-asc' : 'sort-desc');
+
+        rows.sort((a,b) => {
+          const av = parseValue(type, a.children[idx]);
+          const bv = parseValue(type, b.children[idx]);
+          if(av < bv) return asc ? -1 : 1;
+          if(av > bv) return asc ? 1 : -1;
+          return 0;
+        });
+
+        rows.forEach(tr => tbody.appendChild(tr));
+      });
+    });
+
+    const card = table.closest('.bb-tableCard') || table.closest('.card');
+    const tools = card ? card.querySelector('[data-bb-tabletools]') : null;
+
+    const search = document.createElement('input');
+    search.className = 'bb-mini';
+    search.placeholder = 'Search…';
+
+    const exportBtn = document.createElement('button');
+    exportBtn.className = 'btn';
+    exportBtn.type = 'button';
+    exportBtn.textContent = 'Download CSV';
+
+    const count = document.createElement('span');
+    count.className = 'mono';
+    count.style.opacity = '.75';
+
+    function updateCount(){
+      const all = Array.from(tbody.querySelectorAll('tr'));
+      const visible = all.filter(tr => tr.style.display !== 'none');
+      count.textContent = visible.length + ' / ' + all.length;
+    }
+    function applyFilter(){
+      const q = (search.value || '').trim().toLowerCase();
+      const rows = Array.from(tbody.querySelectorAll('tr'));
+      for(const tr of rows){
+        const text = (tr.textContent || '').toLowerCase();
+        tr.style.display = (!q || text.includes(q)) ? '' : 'none';
+      }
+      updateCount();
+    }
+    search.addEventListener('input', applyFilter);
+
+    exportBtn.addEventListener('click', () => {
+      const csv = toCsv(table);
+      const blob = new Blob([csv], { type: 'text/csv;charset=utf-8' });
+      const url = URL.createObjectURL(blob);
+      const a = document.createElement('a');
+      a.href = url;
+      a.download = (document.title || 'table') + '.csv';
+      document.body.appendChild(a);
+      a.click();
+      a.remove();
+      URL.revokeObjectURL(url);
+      toast('CSV exported');
+    });
+
+    if(tools){
+      tools.innerHTML = '';
+      tools.appendChild(search);
+      tools.appendChild(exportBtn);
+      tools.appendChild(count);
+    }
+    updateCount();
+  }
+  document.querySelectorAll('table').forEach(initTable);
+
+  // Copy-to-clipboard
+  document.addEventListener('click', async (ev) => {
+    const el = ev.target && ev.target.closest ? ev.target.closest('[data-copy]') : null;
+    if(!el) return;
+    const value = el.getAttribute('data-copy') || '';
+    try{
+      await navigator.clipboard.writeText(value);
+      toast('Copied');
+    }catch(e){
+      toast('Copy failed');
+    }
+  });
+
+  // Roles toggles (instant save) + green highlight for enabled cells
+  async function postForm(url, obj){
+    const body = new URLSearchParams();
+    for(const k in obj) body.set(k, String(obj[k]));
+    const r = await fetch(url, {
+      method: 'POST',
+      headers: { 'Content-Type':'application/x-www-form-urlencoded;charset=UTF-8' },
+      body: body.toString()
+    });
+    if(!r.ok) throw new Error('HTTP ' + r.status);
+  }
+
+  function updatePermCellHighlight(cb){
+    const td = cb && cb.closest ? cb.closest('td') : null;
+    if(!td) return;
+    if(cb.checked) td.classList.add('bb-permOn');
+    else td.classList.remove('bb-permOn');
+  }
+
+  document.querySelectorAll('.bb-permTable input[type="checkbox"][data-role-id][data-perm-key]')
+    .forEach(cb => updatePermCellHighlight(cb));
+
+  document.addEventListener('change', async (ev) => {
+    const cb = ev.target;
+    if(!cb || cb.tagName !== 'INPUT' || cb.type !== 'checkbox') return;
+    const roleId = cb.getAttribute('data-role-id');
+    const permKey = cb.getAttribute('data-perm-key');
+    if(!roleId || !permKey) return;
+
+    updatePermCellHighlight(cb);
+
+    cb.disabled = true;
+    try{
+      await postForm('/admin/roles/perms/set', {
+        roleId: roleId,
+        permKey: permKey,
+        enabled: cb.checked ? '1' : '0'
+      });
+      toast('Saved');
+    }catch(e){
+      cb.checked = !cb.checked;
+      updatePermCellHighlight(cb);
+      toast('Save failed');
+    }finally{
+      cb.disabled = false;
+    }
+  });
+})();
@@ -52,6 +52,33 @@ CREATE TABLE player_stats (
                                       ON DELETE CASCADE
 );
 
+-- Which server key currently reports a player online (players.online = any row exists)
+CREATE TABLE player_presence (
+                                 server_key VARCHAR(64)  NOT NULL,
+                                 xuid       VARCHAR(64)  NOT NULL,
+                                 joined_at  TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+                                 PRIMARY KEY (server_key, xuid),
+                                 KEY idx_player_presence_xuid (xuid),
+                                 CONSTRAINT fk_player_presence_player
+                                     FOREIGN KEY (xuid) REFERENCES players(xuid)
+                                         ON DELETE CASCADE
+);
+
+-- Every IP/HWID a player was reported with (append-only history; last_seen is refreshed).
+-- Backs the linked-accounts index; players.last_ip/last_hwid only keep the latest value.
+CREATE TABLE player_identifiers (
+                                    xuid       VARCHAR(64)  NOT NULL,
+                                    type       ENUM('IP','HWID') NOT NULL,
+                                    value      VARCHAR(128) NOT NULL,
+                                    first_seen TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+                                    last_seen  TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3),
+                                    PRIMARY KEY (xuid, type, value),
+                                    KEY idx_player_identifiers_value (type, value),
+                                    CONSTRAINT fk_player_identifiers_player
+                                        FOREIGN KEY (xuid) REFERENCES players(xuid)
+                                            ON DELETE CASCADE
+);
+
 -- =========================================================
 -- Bans
 -- =========================================================
@@ -88,17 +115,45 @@ CREATE TABLE bans (
 
 CREATE TABLE ban_targets (
                              ban_id       BIGINT NOT NULL,
-                             target_type  ENUM('XUID','IP','HWID') NOT NULL,
+                             target_type  ENUM('XUID','IP','HWID','CIDR') NOT NULL,
                              target_value VARCHAR(128) NOT NULL,
 
+                             -- CIDR only: network address (4 or 16 bytes, host bits zero) and prefix length;
+                             -- target_value holds the canonical text form
+                             target_net    VARBINARY(16) NULL,
+                             target_prefix TINYINT UNSIGNED NULL,
+
                              PRIMARY KEY (ban_id, target_type, target_value),
                              KEY idx_ban_targets_lookup (target_type, target_value),
+                             KEY idx_ban_targets_net (target_net, target_prefix),
 
                              CONSTRAINT fk_ban_targets_ban
                                  FOREIGN KEY (ban_id) REFERENCES bans(ban_id)
                                      ON DELETE CASCADE
 );
 
+-- Append-only change log for ban sync; one row per ban mutation, written in the same
+-- transaction. seq is the sync cursor (keyset pagination on the primary key).
+CREATE TABLE ban_changes (
+                             seq         BIGINT NOT NULL AUTO_INCREMENT,
+                             ban_id      BIGINT NOT NULL,
+                             change_type ENUM('BAN_UPSERT','EXPIRED') NOT NULL DEFAULT 'BAN_UPSERT',
+
+                             xuid        VARCHAR(64)  NOT NULL,
+                             reason      VARCHAR(255) NULL,
+                             created_at  TIMESTAMP(3) NOT NULL,
+                             expires_at  TIMESTAMP(3) NULL,
+                             revoked_at  TIMESTAMP(3) NULL,
+                             changed_at  TIMESTAMP(3) NOT NULL,
+
+                             PRIMARY KEY (seq),
+                             KEY idx_ban_changes_ban_id (ban_id),
+
+                             CONSTRAINT fk_ban_changes_ban
+                                 FOREIGN KEY (ban_id) REFERENCES bans(ban_id)
+                                     ON DELETE CASCADE
+);
+
 CREATE TABLE ban_events (
                             id              BIGINT NOT NULL AUTO_INCREMENT,
                             ban_id           BIGINT NOT NULL,
@@ -0,0 +1,77 @@
+package org.backendbridge;
+
+import org.backendbridge.repo.StatsRepository;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+/**
+ * Dev utility (test sources, not in the jar): measures one stats ingest batch against the
+ * configured database.
+ *
+ * Usage: StatsBatchBenchmark --confirm [backend.yml] [players] [rounds]
+ *
+ * Writes synthetic players with xuid prefix "bench-" and deletes them afterwards, so it
+ * refuses to run without {@code --confirm}. The pool is limited to one connection, so the
+ * batch runs on the session whose {@code Questions} status counter is read before and after:
+ * the printed statement count is what the server received (including transaction control),
+ * not what the client thinks it sent.
+ */
+public final class StatsBatchBenchmark {
+
+    private StatsBatchBenchmark() {}
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || !"--confirm".equals(args[0])) {
+            System.out.println("[StatsBatchBenchmark] Writes and deletes players 'bench-%' in the configured database.");
+            System.out.println("Usage: StatsBatchBenchmark --confirm [backend.yml] [players] [rounds]");
+            return;
+        }
+
+        Path cfgPath = Path.of(args.length >= 2 ? args[1] : "backend.yml");
+        int players = args.length >= 3 ? Integer.parseInt(args[2]) : 5_000;
+        int rounds = args.length >= 4 ? Integer.parseInt(args[3]) : 5;
+
+        AppConfig cfg = AppConfig.load(cfgPath);
+        AppConfig.DbCfg dbCfg = cfg.db();
+        try (Db db = new Db(new AppConfig.DbCfg(dbCfg.jdbcUrl(), dbCfg.username(), dbCfg.password(), 1))) {
+            StatsRepository repo = new StatsRepository(db, cfg.stats().batchChunkSize());
+
+            for (int r = 1; r <= rounds; r++) {
+                long before = questions(db);
+                long t0 = System.nanoTime();
+                try (StatsRepository.Batch batch = repo.openBatch()) {
+                    for (int i = 0; i < players; i++) {
+                        batch.add("bench-" + i, "Bench" + i, 60, i % 3, i % 2);
+                    }
+                    batch.commit();
+                }
+                long ms = (System.nanoTime() - t0) / 1_000_000;
+                // The second SHOW STATUS counts itself.
+                long statements = questions(db) - before - 1;
+
+                System.out.println("[StatsBatchBenchmark] round " + r + ": players=" + players
+                        + " chunkSize=" + cfg.stats().batchChunkSize()
+                        + " statements=" + statements
+                        + " time=" + ms + "ms");
+            }
+
+            try (Connection c = db.getConnection();
+                 PreparedStatement ps = c.prepareStatement("DELETE FROM players WHERE xuid LIKE 'bench-%'")) {
+                ps.executeUpdate();
+            }
+        }
+    }
+
+    /** Statements the server received on this (the only) pooled session. */
+    private static long questions(Db db) throws Exception {
+        try (Connection c = db.getConnection();
+             PreparedStatement ps = c.prepareStatement("SHOW SESSION STATUS LIKE 'Questions'");
+             ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) throw new IllegalStateException("Questions status missing");
+            return rs.getLong(2);
+        }
+    }
+}